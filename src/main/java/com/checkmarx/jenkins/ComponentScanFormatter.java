@@ -2,8 +2,6 @@ package com.checkmarx.jenkins;
 
 import org.apache.commons.lang.exception.ExceptionUtils;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.util.logging.Formatter;
 import java.util.logging.LogRecord;
 
@@ -18,16 +16,13 @@ public class ComponentScanFormatter extends Formatter {
     @Override
     public String format(LogRecord record) {
         if (record.getSourceClassName() != null && record.getSourceClassName().startsWith("org.whitesource")) {
-            String message = formatMessage(record);
-            String throwable = "";
+            StringBuilder sb = new StringBuilder(128)
+                    .append("[OSA ComponentScan-").append(record.getLevel()).append("]: ")
+                    .append(formatMessage(record)).append(' ');
             if (record.getThrown() != null) {
-                throwable = ExceptionUtils.getStackTrace(record.getThrown());
+                sb.append(ExceptionUtils.getStackTrace(record.getThrown()));
             }
-
-            return String.format("[OSA ComponentScan-%s]: %s %s" + lineSeparator,
-                    record.getLevel(),
-                    message,
-                    throwable);
+            return sb.append(lineSeparator).toString();
         }
         return "";
     }
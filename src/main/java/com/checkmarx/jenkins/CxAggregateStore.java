@@ -0,0 +1,419 @@
+package com.checkmarx.jenkins;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import hudson.XmlFile;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller wide summary of the latest Checkmarx results of every job, kept in
+ * {@code $JENKINS_HOME/com.checkmarx.jenkins.CxAggregateStore.xml}.
+ * <p>
+ * Entries are updated one at a time as builds complete ({@link CxRunListener}) and jobs are renamed or
+ * deleted ({@link CxItemListener}), so the dashboard never has to walk jobs or load builds. Readers get an
+ * immutable snapshot, rebuilt on every update.
+ */
+public final class CxAggregateStore {
+
+    private static final Logger LOGGER = Logger.getLogger(CxAggregateStore.class.getName());
+
+    /**
+     * Completed builds of a job looked at by {@link #rebuild()} for one with results.
+     */
+    private static final int REBUILD_DEPTH = Integer.getInteger(CxAggregateStore.class.getName() + ".rebuildDepth", 20);
+
+    private static CxAggregateStore instance;
+
+    private final XmlFile file;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private volatile Snapshot snapshot = new Snapshot(Collections.<Entry>emptyList());
+
+    private CxAggregateStore(XmlFile file) {
+        this.file = file;
+    }
+
+    public static synchronized CxAggregateStore get() {
+        if (instance == null) {
+            instance = new CxAggregateStore(new XmlFile(Jenkins.XSTREAM2,
+                    new File(Jenkins.getInstance().getRootDir(), CxAggregateStore.class.getName() + ".xml")));
+            instance.load();
+        }
+        return instance;
+    }
+
+    /**
+     * Latest Checkmarx results of one job.
+     */
+    public static final class Entry {
+        private String jobFullName;
+        private int buildNumber;
+        private long timestamp;
+        private String result;
+        private boolean sastEnabled;
+        private boolean osaEnabled;
+        private int highCount;
+        private int mediumCount;
+        private int lowCount;
+        private int osaHighCount;
+        private int osaMediumCount;
+        private int osaLowCount;
+        private Boolean thresholdViolated;
+        private boolean newResultsThresholdExceeded;
+
+        public String getJobFullName() {
+            return jobFullName;
+        }
+
+        public int getBuildNumber() {
+            return buildNumber;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getResult() {
+            return result;
+        }
+
+        public boolean isSastEnabled() {
+            return sastEnabled;
+        }
+
+        public boolean isOsaEnabled() {
+            return osaEnabled;
+        }
+
+        public int getHighCount() {
+            return highCount;
+        }
+
+        public int getMediumCount() {
+            return mediumCount;
+        }
+
+        public int getLowCount() {
+            return lowCount;
+        }
+
+        public int getOsaHighCount() {
+            return osaHighCount;
+        }
+
+        public int getOsaMediumCount() {
+            return osaMediumCount;
+        }
+
+        public int getOsaLowCount() {
+            return osaLowCount;
+        }
+
+        @Nullable
+        public Boolean getThresholdViolated() {
+            return thresholdViolated;
+        }
+
+        public boolean isNewResultsThresholdExceeded() {
+            return newResultsThresholdExceeded;
+        }
+
+        /**
+         * Threshold status as shown on the dashboard: "Exceeded", "Passed" or "Not evaluated".
+         */
+        public String getThresholdStatus() {
+            if (Boolean.TRUE.equals(thresholdViolated) || newResultsThresholdExceeded) {
+                return "Exceeded";
+            }
+            return thresholdViolated == null ? "Not evaluated" : "Passed";
+        }
+
+        public long getAgeMillis() {
+            return System.currentTimeMillis() - timestamp;
+        }
+    }
+
+    /**
+     * Immutable view of the store, sorted by job name, with totals over its entries.
+     */
+    public static final class Snapshot {
+        private final List<Entry> entries;
+        private final int highCount;
+        private final int mediumCount;
+        private final int lowCount;
+        private final int osaHighCount;
+        private final int osaMediumCount;
+        private final int osaLowCount;
+        private final int thresholdExceededCount;
+
+        Snapshot(List<Entry> entries) {
+            this.entries = Collections.unmodifiableList(entries);
+            int high = 0, medium = 0, low = 0, osaHigh = 0, osaMedium = 0, osaLow = 0, exceeded = 0;
+            for (Entry e : entries) {
+                high += e.highCount;
+                medium += e.mediumCount;
+                low += e.lowCount;
+                osaHigh += e.osaHighCount;
+                osaMedium += e.osaMediumCount;
+                osaLow += e.osaLowCount;
+                if ("Exceeded".equals(e.getThresholdStatus())) {
+                    exceeded++;
+                }
+            }
+            this.highCount = high;
+            this.mediumCount = medium;
+            this.lowCount = low;
+            this.osaHighCount = osaHigh;
+            this.osaMediumCount = osaMedium;
+            this.osaLowCount = osaLow;
+            this.thresholdExceededCount = exceeded;
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        public int getHighCount() {
+            return highCount;
+        }
+
+        public int getMediumCount() {
+            return mediumCount;
+        }
+
+        public int getLowCount() {
+            return lowCount;
+        }
+
+        public int getOsaHighCount() {
+            return osaHighCount;
+        }
+
+        public int getOsaMediumCount() {
+            return osaMediumCount;
+        }
+
+        public int getOsaLowCount() {
+            return osaLowCount;
+        }
+
+        public int getThresholdExceededCount() {
+            return thresholdExceededCount;
+        }
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public boolean isEmpty() {
+        return snapshot.entries.isEmpty();
+    }
+
+    /**
+     * Records the results of the given build, unless the job already has an entry for a newer build.
+     */
+    public void update(Run<?, ?> run) {
+        CxScanResult result = run.getAction(CxScanResult.class);
+        if (result == null) {
+            return;
+        }
+        Entry entry = toEntry(run, result);
+        synchronized (this) {
+            Entry current = entries.get(entry.jobFullName);
+            if (current != null && current.buildNumber > entry.buildNumber) {
+                return;
+            }
+            entries.put(entry.jobFullName, entry);
+            changed();
+        }
+    }
+
+    /**
+     * Called when a build is deleted; falls back to the previous build with results if it was the latest one.
+     */
+    public void removeBuild(Run<?, ?> run) {
+        String jobFullName = run.getParent().getFullName();
+        synchronized (this) {
+            Entry current = entries.get(jobFullName);
+            if (current == null || current.buildNumber != run.getNumber()) {
+                return;
+            }
+        }
+        CxScanResult result = run.getAction(CxScanResult.class);
+        CxScanResult previous = result == null ? null : result.getPreviousResult();
+        synchronized (this) {
+            if (previous != null) {
+                entries.put(jobFullName, toEntry(previous.owner, previous));
+            } else {
+                entries.remove(jobFullName);
+            }
+            changed();
+        }
+    }
+
+    public synchronized void renameJob(String oldFullName, String newFullName) {
+        Entry entry = entries.remove(oldFullName);
+        if (entry != null) {
+            entry.jobFullName = newFullName;
+            entries.put(newFullName, entry);
+            changed();
+        }
+    }
+
+    public synchronized void removeJob(String fullName) {
+        if (entries.remove(fullName) != null) {
+            changed();
+        }
+    }
+
+    /**
+     * Called when a folder is deleted, which deletes its jobs without notifying about each of them.
+     */
+    public synchronized void removeJobsIn(String folderFullName) {
+        String prefix = folderFullName + "/";
+        boolean removed = false;
+        for (Iterator<String> it = entries.keySet().iterator(); it.hasNext(); ) {
+            if (it.next().startsWith(prefix)) {
+                it.remove();
+                removed = true;
+            }
+        }
+        if (removed) {
+            changed();
+        }
+    }
+
+    /**
+     * Fills the store from the last build with results of every job. Only used when there is no stored data
+     * yet, e.g. right after the plugin was upgraded.
+     * <p>
+     * Only jobs configured with the Checkmarx build step are walked, at most {@link #REBUILD_DEPTH} completed
+     * builds back, and the store is saved once at the end.
+     */
+    void rebuild() {
+        for (Job<?, ?> job : Jenkins.getInstance().getAllItems(Job.class)) {
+            if (!(job instanceof AbstractProject) || job.getAction(CxProjectResult.class) == null) {
+                continue;
+            }
+            int depth = 0;
+            for (Run<?, ?> run = job.getLastCompletedBuild(); run != null && depth < REBUILD_DEPTH;
+                 run = run.getPreviousCompletedBuild(), depth++) {
+                CxScanResult result = run.getAction(CxScanResult.class);
+                if (result != null) {
+                    Entry entry = toEntry(run, result);
+                    synchronized (this) {
+                        Entry current = entries.get(entry.jobFullName);
+                        if (current == null || current.buildNumber < entry.buildNumber) {
+                            entries.put(entry.jobFullName, entry);
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+        synchronized (this) {
+            changed();
+        }
+    }
+
+    boolean isStored() {
+        return file.exists();
+    }
+
+    private static Entry toEntry(Run<?, ?> run, CxScanResult result) {
+        Entry entry = new Entry();
+        entry.jobFullName = run.getParent().getFullName();
+        entry.buildNumber = run.getNumber();
+        entry.timestamp = run.getTimeInMillis() + run.getDuration();
+        Result buildResult = run.getResult();
+        entry.result = buildResult == null ? null : buildResult.toString();
+        entry.sastEnabled = result.getSastEnabled() == null || result.getSastEnabled();
+        entry.osaEnabled = result.isOsaEnabled();
+        entry.highCount = result.getHighCount();
+        entry.mediumCount = result.getMediumCount();
+        entry.lowCount = result.getLowCount();
+        entry.osaHighCount = result.getOsaHighCount();
+        entry.osaMediumCount = result.getOsaMediumCount();
+        entry.osaLowCount = result.getOsaLowCount();
+        readOsaSummary(new File(new File(run.getRootDir(), "checkmarx"), CxScanBuilder.OSA_SUMMERY_JSON), entry);
+        entry.thresholdViolated = result.getThresholdViolated();
+        entry.newResultsThresholdExceeded = result.getIsThresholdForNewResultExceeded();
+        return entry;
+    }
+
+    private static void readOsaSummary(File summary, Entry entry) {
+        if (!summary.isFile()) {
+            return;
+        }
+        try {
+            JsonNode node = CxJson.MAPPER.readTree(summary);
+            entry.osaHighCount = node.path("totalHighVulnerabilities").asInt(entry.osaHighCount);
+            entry.osaMediumCount = node.path("totalMediumVulnerabilities").asInt(entry.osaMediumCount);
+            entry.osaLowCount = node.path("totalLowVulnerabilities").asInt(entry.osaLowCount);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to read " + summary, e);
+        }
+    }
+
+    private void changed() {
+        List<Entry> sorted = refreshSnapshot();
+        try {
+            file.write(sorted);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save " + file, e);
+        }
+    }
+
+    private List<Entry> refreshSnapshot() {
+        List<Entry> sorted = new ArrayList<Entry>(entries.values());
+        Collections.sort(sorted, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return a.jobFullName.compareToIgnoreCase(b.jobFullName);
+            }
+        });
+        snapshot = new Snapshot(sorted);
+        return sorted;
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            List<Entry> stored = (List<Entry>) file.read();
+            for (Entry e : stored) {
+                entries.put(e.jobFullName, e);
+            }
+            refreshSnapshot();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load " + file, e);
+        }
+    }
+
+    /**
+     * Whether the given entry's job is visible to the current user.
+     */
+    static boolean isVisible(Entry entry) {
+        Item item = Jenkins.getInstance().getItemByFullName(entry.jobFullName);
+        return item != null && item.hasPermission(Item.READ);
+    }
+}
@@ -0,0 +1,414 @@
+package com.checkmarx.jenkins;
+
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accepted SAST findings of a job or folder: false positives, accepted risks and baselined results, keyed by
+ * {@link CxResultsIndex#getFingerprint fingerprint}. Suppressed findings are skipped by the
+ * {@link CxThresholdPolicy threshold policy} and can be filtered out of the results views, without asking the
+ * server.
+ * <p>
+ * A baseline is stored as {@value #FILE_NAME} in the root directory of its job or folder. Fingerprints are looked
+ * up in a {@link CxFingerprintMap} pointing into primitive record columns, so a lookup costs a few array reads
+ * even for millions of entries. Loaded baselines are shared and never modified; updates re-read the file, change
+ * the copy and replace the file atomically.
+ */
+public final class CxBaseline {
+
+    public static final String FILE_NAME = "checkmarx-baseline.bin";
+
+    private static final int MAGIC = 0x43584253; // "CXBS"
+    private static final int VERSION = 1;
+    private static final byte DELETED = -1;
+
+    /**
+     * Longest author or comment, in characters; stored strings are limited to 64 KB of modified UTF-8.
+     */
+    public static final int MAX_TEXT_LENGTH = 4096;
+
+    private static final int MAX_LOADED = Integer.getInteger(CxBaseline.class.getName() + ".maxLoaded", 16);
+
+    private static final Map<String, CxBaseline> LOADED = new LinkedHashMap<String, CxBaseline>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CxBaseline> eldest) {
+            return size() > MAX_LOADED;
+        }
+    };
+
+    private static final Object UPDATE_LOCK = new Object();
+
+    static final CxBaseline EMPTY = new CxBaseline(0);
+
+    /**
+     * Why a finding is suppressed.
+     */
+    public enum Reason {
+        FALSE_POSITIVE("False positive"),
+        RISK_ACCEPTED("Risk accepted"),
+        BASELINE("Baseline");
+
+        private final String displayName;
+
+        Reason(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    private final CxFingerprintMap records;
+    private final List<String> strings = new ArrayList<String>();
+    private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+    private byte[] reason;
+    private int[] author;
+    private int[] comment;
+    private long[] created;
+    private int count;
+    private int live;
+
+    private CxBaseline(int expectedSize) {
+        this.records = new CxFingerprintMap(expectedSize);
+        this.reason = new byte[Math.max(16, expectedSize)];
+        this.author = new int[reason.length];
+        this.comment = new int[reason.length];
+        this.created = new long[reason.length];
+    }
+
+    /**
+     * A suppression record.
+     */
+    public final class Record {
+        private final int id;
+
+        Record(int id) {
+            this.id = id;
+        }
+
+        public Reason getReason() {
+            return Reason.values()[reason[id]];
+        }
+
+        public String getAuthor() {
+            return strings.get(author[id]);
+        }
+
+        public String getComment() {
+            return strings.get(comment[id]);
+        }
+
+        public long getCreated() {
+            return created[id];
+        }
+    }
+
+    /**
+     * Suppressed fingerprints.
+     */
+    public int size() {
+        return live;
+    }
+
+    public boolean contains(long fingerprint) {
+        int id = records.get(fingerprint, -1);
+        return id >= 0 && reason[id] != DELETED;
+    }
+
+    /**
+     * Returns the suppression record of the fingerprint, or null.
+     */
+    public Record get(long fingerprint) {
+        return contains(fingerprint) ? new Record(records.get(fingerprint, -1)) : null;
+    }
+
+    /**
+     * Suppressions that apply to one job: its own baseline and those of the folders it is in.
+     */
+    public static final class Lookup {
+        public static final Lookup NONE = new Lookup(new CxBaseline[0]);
+
+        private final CxBaseline[] baselines;
+
+        Lookup(CxBaseline[] baselines) {
+            this.baselines = baselines;
+        }
+
+        public boolean isEmpty() {
+            return baselines.length == 0;
+        }
+
+        public boolean isSuppressed(long fingerprint) {
+            for (CxBaseline b : baselines) {
+                if (b.contains(fingerprint)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the record of the innermost baseline suppressing the fingerprint, or null.
+         */
+        public Record get(long fingerprint) {
+            for (CxBaseline b : baselines) {
+                Record r = b.get(fingerprint);
+                if (r != null) {
+                    return r;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns the suppressions of the given job, from the job itself up through its folders.
+     */
+    public static Lookup lookup(Item job) throws IOException {
+        List<CxBaseline> ret = new ArrayList<CxBaseline>();
+        Item item = job;
+        while (item != null) {
+            CxBaseline b = load(item.getRootDir());
+            if (b.size() > 0) {
+                ret.add(b);
+            }
+            ItemGroup<?> parent = item.getParent();
+            item = parent instanceof Item ? (Item) parent : null;
+        }
+        return ret.isEmpty() ? Lookup.NONE : new Lookup(ret.toArray(new CxBaseline[ret.size()]));
+    }
+
+    /**
+     * Loads the baseline stored in the given job or folder directory. Returns an empty baseline if there is none.
+     */
+    public static CxBaseline load(File dir) throws IOException {
+        File file = new File(dir, FILE_NAME);
+        if (!file.isFile()) {
+            return EMPTY;
+        }
+        String key = file.getAbsolutePath() + "@" + file.lastModified();
+        synchronized (LOADED) {
+            CxBaseline cached = LOADED.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        CxBaseline baseline = read(file);
+        synchronized (LOADED) {
+            LOADED.put(key, baseline);
+        }
+        return baseline;
+    }
+
+    /**
+     * Suppresses every result of a build, or only the ones marked as false positives on the server. Results marked
+     * as false positives are recorded as such, the others with the given reason.
+     *
+     * @return the number of fingerprints that were not suppressed yet
+     * @throws IllegalArgumentException if the author or comment is longer than {@link #MAX_TEXT_LENGTH}
+     */
+    public static int importResults(File dir, CxResultsIndex index, boolean falsePositivesOnly,
+                                    Reason reason, String author, String comment) throws IOException {
+        checkText(author, "author");
+        checkText(comment, "comment");
+        synchronized (UPDATE_LOCK) {
+            CxBaseline baseline = readForUpdate(dir);
+            long now = System.currentTimeMillis();
+            int added = 0;
+            for (int row = 0; row < index.size(); row++) {
+                if (!falsePositivesOnly || index.isFalsePositive(row)) {
+                    Reason r = index.isFalsePositive(row) ? Reason.FALSE_POSITIVE : reason;
+                    if (baseline.put(index.getFingerprint(row), r, author, comment, now)) {
+                        added++;
+                    }
+                }
+            }
+            if (added > 0) {
+                baseline.save(dir);
+            }
+            return added;
+        }
+    }
+
+    /**
+     * Suppresses one fingerprint, replacing its previous record if any.
+     *
+     * @throws IllegalArgumentException if the fingerprint is 0, which no result has, or the author or comment is
+     *                                  longer than {@link #MAX_TEXT_LENGTH}
+     */
+    public static void suppress(File dir, long fingerprint, Reason reason, String author, String comment) throws IOException {
+        if (fingerprint == 0) {
+            throw new IllegalArgumentException("Invalid fingerprint 0");
+        }
+        checkText(author, "author");
+        checkText(comment, "comment");
+        synchronized (UPDATE_LOCK) {
+            CxBaseline baseline = readForUpdate(dir);
+            baseline.put(fingerprint, reason, author, comment, System.currentTimeMillis());
+            baseline.save(dir);
+        }
+    }
+
+    /**
+     * Lifts the suppression of one fingerprint.
+     *
+     * @return whether it was suppressed
+     */
+    public static boolean unsuppress(File dir, long fingerprint) throws IOException {
+        synchronized (UPDATE_LOCK) {
+            CxBaseline baseline = readForUpdate(dir);
+            int id = baseline.records.get(fingerprint, -1);
+            if (id < 0 || baseline.reason[id] == DELETED) {
+                return false;
+            }
+            baseline.reason[id] = DELETED;
+            baseline.live--;
+            baseline.save(dir);
+            return true;
+        }
+    }
+
+    /**
+     * Rejects texts that cannot be saved, before anything is written.
+     */
+    private static void checkText(String text, String name) {
+        if (text != null && text.length() > MAX_TEXT_LENGTH) {
+            throw new IllegalArgumentException("The " + name + " is longer than " + MAX_TEXT_LENGTH + " characters");
+        }
+    }
+
+    private static CxBaseline readForUpdate(File dir) throws IOException {
+        File file = new File(dir, FILE_NAME);
+        return file.isFile() ? read(file) : new CxBaseline(0);
+    }
+
+    /**
+     * Returns whether the fingerprint was not suppressed before.
+     */
+    private boolean put(long fingerprint, Reason r, String authorName, String commentText, long time) {
+        if (fingerprint == 0) {
+            return false;
+        }
+        int id = records.get(fingerprint, -1);
+        boolean added = id < 0 || reason[id] == DELETED;
+        if (id < 0) {
+            id = append(fingerprint);
+        }
+        reason[id] = (byte) r.ordinal();
+        author[id] = string(authorName);
+        comment[id] = string(commentText);
+        created[id] = time;
+        if (added) {
+            live++;
+        }
+        return added;
+    }
+
+    private int append(long fingerprint) {
+        if (count == reason.length) {
+            int capacity = reason.length << 1;
+            reason = Arrays.copyOf(reason, capacity);
+            author = Arrays.copyOf(author, capacity);
+            comment = Arrays.copyOf(comment, capacity);
+            created = Arrays.copyOf(created, capacity);
+        }
+        records.put(fingerprint, count);
+        reason[count] = DELETED;
+        return count++;
+    }
+
+    private int string(String s) {
+        String value = s == null ? "" : s;
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            strings.add(value);
+            stringIds.put(value, id);
+        }
+        return id;
+    }
+
+    private void save(File dir) throws IOException {
+        File file = new File(dir, FILE_NAME);
+        File tmp = new File(dir, FILE_NAME + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(strings.size());
+            for (String s : strings) {
+                out.writeUTF(s);
+            }
+            out.writeInt(live);
+            for (long fingerprint : records.keys()) {
+                int id = records.get(fingerprint, -1);
+                if (reason[id] != DELETED) {
+                    out.writeLong(fingerprint);
+                    out.writeByte(reason[id]);
+                    out.writeInt(author[id]);
+                    out.writeInt(comment[id]);
+                    out.writeLong(created[id]);
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Failed to write " + file);
+            }
+        }
+        synchronized (LOADED) {
+            LOADED.put(file.getAbsolutePath() + "@" + file.lastModified(), this);
+        }
+    }
+
+    private static CxBaseline read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported baseline " + file);
+            }
+            int stringCount = in.readInt();
+            String[] dictionary = new String[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                dictionary[i] = in.readUTF();
+            }
+            int size = in.readInt();
+            CxBaseline ret = new CxBaseline(size);
+            for (String s : dictionary) {
+                ret.string(s);
+            }
+            for (int i = 0; i < size; i++) {
+                int id = ret.append(in.readLong());
+                ret.reason[id] = in.readByte();
+                ret.author[id] = in.readInt();
+                ret.comment[id] = in.readInt();
+                ret.created[id] = in.readLong();
+            }
+            ret.live = size;
+            return ret;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.CxShragaClient;
+import hudson.ProxyConfiguration;
+import hudson.Util;
+import jenkins.model.Jenkins;
+import org.apache.commons.io.IOUtils;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Probe suite behind the "Test Connection" button: times DNS resolution, TCP connect, TLS handshake, login and
+ * a cheap list call against the Checkmarx server, over a few repetitions.
+ * <p>
+ * Upload throughput is not sampled: the only upload the client offers attaches sources to a project and starts
+ * a scan, and a request sent around the client would neither be authenticated nor use its proxy settings.
+ */
+public final class CxConnectionDiagnostics {
+
+    static final int REPETITIONS = Integer.getInteger(CxConnectionDiagnostics.class.getName() + ".repetitions", 3);
+    private static final int TIMEOUT_MILLIS = 10000;
+
+    private final URL serverUrl;
+    private final boolean disableCertificateValidation;
+    private final Callable<CxShragaClient> clientFactory;
+
+    CxConnectionDiagnostics(String serverUrl, boolean disableCertificateValidation, Callable<CxShragaClient> clientFactory) throws IOException {
+        this.serverUrl = new URL(serverUrl.trim());
+        this.disableCertificateValidation = disableCertificateValidation;
+        this.clientFactory = clientFactory;
+    }
+
+    /**
+     * Timings of one phase over all repetitions, in milliseconds.
+     */
+    public static final class Phase {
+        private final String name;
+        private final List<Long> samples = new ArrayList<Long>();
+        private String detail;
+
+        Phase(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+
+        public int getCount() {
+            return samples.size();
+        }
+
+        /**
+         * Nearest rank percentile of the samples, or -1 if the phase never completed.
+         */
+        public long getPercentile(int percentile) {
+            if (samples.isEmpty()) {
+                return -1;
+            }
+            List<Long> sorted = new ArrayList<Long>(samples);
+            Collections.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+            return sorted.get(Math.max(0, rank - 1));
+        }
+    }
+
+    /**
+     * Outcome of one diagnostics run.
+     */
+    public static final class Report {
+        private final long timestamp = System.currentTimeMillis();
+        private final String serverUrl;
+        private final List<Phase> phases;
+        private String error;
+
+        Report(String serverUrl, List<Phase> phases) {
+            this.serverUrl = serverUrl;
+            this.phases = phases;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getServerUrl() {
+            return serverUrl;
+        }
+
+        public List<Phase> getPhases() {
+            return phases;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+
+        Phase getPhase(String name) {
+            for (Phase p : phases) {
+                if (p.name.equals(name)) {
+                    return p;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Renders the report as an HTML table, with the median of {@code previous} for comparison.
+         */
+        public String toHtml(Report previous) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("<table class='pane' style='width:auto'><tr><th>Phase</th><th>min</th><th>p50</th><th>p90</th><th>max</th>");
+            if (previous != null) {
+                sb.append("<th>previous p50</th>");
+            }
+            sb.append("<th></th></tr>");
+            for (Phase p : phases) {
+                sb.append("<tr><td>").append(Util.escape(p.name)).append("</td>");
+                for (int percentile : new int[]{0, 50, 90, 100}) {
+                    sb.append("<td>").append(formatMillis(p.getPercentile(percentile))).append("</td>");
+                }
+                if (previous != null) {
+                    Phase before = previous.getPhase(p.name);
+                    sb.append("<td>").append(formatMillis(before == null ? -1 : before.getPercentile(50))).append("</td>");
+                }
+                sb.append("<td>").append(p.detail == null ? "" : Util.escape(p.detail)).append("</td></tr>");
+            }
+            sb.append("</table>");
+            return sb.toString();
+        }
+
+        private static String formatMillis(long millis) {
+            return millis < 0 ? "-" : millis + " ms";
+        }
+    }
+
+    /**
+     * Runs all phases {@link #REPETITIONS} times.
+     * <p>
+     * The DNS, TCP and TLS probes connect directly, so they are skipped when a proxy applies to the server, and
+     * a failing probe only skips the other probes of its repetition: whether the test passes is decided by the
+     * login and the list call, which go through the client like a scan does. A failed login or list call stops
+     * the run; the report then carries the error and the timings collected so far.
+     */
+    Report run() {
+        Phase dns = new Phase("DNS resolve");
+        Phase tcp = new Phase("TCP connect");
+        Phase tls = new Phase("TLS handshake");
+        Phase login = new Phase("Login");
+        Phase list = new Phase("List teams");
+        boolean https = "https".equalsIgnoreCase(serverUrl.getProtocol());
+        String proxy = proxyFor(serverUrl);
+        List<Phase> phases = new ArrayList<Phase>();
+        if (proxy == null) {
+            phases.addAll(https ? Arrays.asList(dns, tcp, tls) : Arrays.asList(dns, tcp));
+        }
+        phases.addAll(Arrays.asList(login, list));
+        Report report = new Report(serverUrl.toString(), phases);
+        if (proxy != null) {
+            login.detail = "via proxy " + proxy;
+        }
+
+        Phase current = login;
+        try {
+            for (int i = 0; i < REPETITIONS; i++) {
+                if (proxy == null) {
+                    probe(dns, tcp, https ? tls : null);
+                }
+
+                current = login;
+                long start = System.nanoTime();
+                CxShragaClient client = clientFactory.call();
+                try {
+                    sample(login, start);
+
+                    current = list;
+                    start = System.nanoTime();
+                    int teams = client.getTeamList().size();
+                    sample(list, start);
+                    list.detail = teams + " teams";
+                } finally {
+                    client.close();
+                }
+            }
+        } catch (Exception e) {
+            report.error = current.name + " failed: " + e.getMessage();
+            current.detail = e.getClass().getSimpleName();
+        }
+        return report;
+    }
+
+    /**
+     * Times DNS resolution, TCP connect and, if {@code tls} is given, the TLS handshake. A failure is recorded as
+     * the detail of its phase.
+     */
+    private void probe(Phase dns, Phase tcp, Phase tls) {
+        String host = serverUrl.getHost();
+        int port = serverUrl.getPort() != -1 ? serverUrl.getPort() : serverUrl.getDefaultPort();
+        Phase current = dns;
+        try {
+            long start = System.nanoTime();
+            InetAddress[] addresses = InetAddress.getAllByName(host);
+            sample(dns, start);
+            dns.detail = addresses[0].getHostAddress();
+
+            current = tcp;
+            start = System.nanoTime();
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(addresses[0], port), TIMEOUT_MILLIS);
+                sample(tcp, start);
+
+                if (tls != null) {
+                    current = tls;
+                    start = System.nanoTime();
+                    SSLSocket ssl = (SSLSocket) socketFactory().createSocket(socket, host, port, true);
+                    try {
+                        ssl.setSoTimeout(TIMEOUT_MILLIS);
+                        ssl.startHandshake();
+                        sample(tls, start);
+                        tls.detail = ssl.getSession().getProtocol() + " " + ssl.getSession().getCipherSuite();
+                    } finally {
+                        IOUtils.closeQuietly(ssl);
+                    }
+                }
+            } finally {
+                IOUtils.closeQuietly(socket);
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            current.detail = "failed: " + e.getClass().getSimpleName();
+        }
+    }
+
+    /**
+     * Returns the proxy the server is reached through, from the Jenkins proxy configuration or the JVM proxy
+     * settings, or null for a direct connection.
+     */
+    private static String proxyFor(URL url) {
+        ProxyConfiguration configuration = Jenkins.getInstance().proxy;
+        if (configuration != null) {
+            Proxy proxy = configuration.createProxy(url.getHost());
+            if (proxy.type() != Proxy.Type.DIRECT) {
+                return String.valueOf(proxy.address());
+            }
+        }
+        try {
+            for (Proxy proxy : ProxySelector.getDefault().select(url.toURI())) {
+                if (proxy.type() != Proxy.Type.DIRECT) {
+                    return String.valueOf(proxy.address());
+                }
+            }
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            // not a URI the selector understands, assume a direct connection
+        }
+        return null;
+    }
+
+    private static void sample(Phase phase, long startNanos) {
+        phase.samples.add((System.nanoTime() - startNanos) / 1000000);
+    }
+
+    private SSLSocketFactory socketFactory() throws GeneralSecurityException {
+        if (!disableCertificateValidation) {
+            return (SSLSocketFactory) SSLSocketFactory.getDefault();
+        }
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new TrustManager[]{new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        }}, null);
+        return context.getSocketFactory();
+    }
+}
@@ -3,20 +3,34 @@ package com.checkmarx.jenkins;
 import com.checkmarx.jenkins.exception.CxCredentialsException;
 import com.cloudbees.plugins.credentials.CredentialsMatchers;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.cloudbees.plugins.credentials.domains.DomainRequirement;
 import com.cx.restclient.common.ErrorMessage;
 
+import hudson.Extension;
+import hudson.XmlFile;
 import hudson.model.Item;
+import hudson.model.ItemGroup;
 import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.User;
+import hudson.model.listeners.SaveableListener;
 import org.apache.commons.lang.StringUtils;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 //resolve between global or specific and username+password or credential manager
 public class CxCredentials {
 
+    private static final long LOOKUP_CACHE_TTL_MILLIS = Long.getLong(CxCredentials.class.getName() + ".lookupCacheSeconds", 60) * 1000;
+    private static final int LOOKUP_CACHE_MAX_ENTRIES = 1024;
+    private static final ConcurrentMap<String, CachedLookup> LOOKUP_CACHE = new ConcurrentHashMap<String, CachedLookup>();
+
     private String serverUrl;
     private String username;
     private String password;
@@ -86,12 +100,7 @@ public class CxCredentials {
             ret.setServerUrl(serverUrl);
             if (StringUtils.isNotEmpty(credentialsId)) {
 
-                StandardUsernamePasswordCredentials c = CredentialsMatchers.firstOrNull(CredentialsProvider.lookupCredentials(
-                                StandardUsernamePasswordCredentials.class,
-                                item,
-                                null,
-                                Collections.<DomainRequirement>emptyList()),
-                        CredentialsMatchers.withId(credentialsId));
+                StandardUsernamePasswordCredentials c = lookupCredentialsById(item, credentialsId);
 
                 ret.setUsername(c != null ? c.getUsername() : "");
                 ret.setPassword(c != null ? c.getPassword().getPlainText() : "");
@@ -107,12 +116,7 @@ public class CxCredentials {
             ret.setServerUrl(descriptor.getServerUrl());
             if (StringUtils.isNotEmpty(descriptor.getCredentialsId())) {
 
-                StandardUsernamePasswordCredentials c = CredentialsMatchers.firstOrNull(CredentialsProvider.lookupCredentials(
-                        StandardUsernamePasswordCredentials.class,
-                        item,
-                        null,
-                        Collections.<DomainRequirement>emptyList()),
-                        CredentialsMatchers.withId(descriptor.getCredentialsId()));
+                StandardUsernamePasswordCredentials c = lookupCredentialsById(item, descriptor.getCredentialsId());
 
                 ret.setUsername(c != null ? c.getUsername() : "");
                 ret.setPassword(c != null ? c.getPassword().getPlainText() : "");
@@ -126,6 +130,62 @@ public class CxCredentials {
         }
     }
 
+    /**
+     * Looks up username/password credentials visible to the item by id. Results, including misses, are kept for a
+     * short while since form validation and fill methods resolve the same credentials on every request; any
+     * save of a credentials store, folder or user drops them.
+     */
+    @Nullable
+    private static StandardUsernamePasswordCredentials lookupCredentialsById(Item item, String credentialsId) {
+        String key = (item == null ? "" : item.getFullName()) + '\u0000' + credentialsId;
+        long now = System.currentTimeMillis();
+        CachedLookup cached = LOOKUP_CACHE.get(key);
+        if (cached != null && cached.expiresAt > now) {
+            return cached.credentials;
+        }
+
+        StandardUsernamePasswordCredentials c = CredentialsMatchers.firstOrNull(CredentialsProvider.lookupCredentials(
+                StandardUsernamePasswordCredentials.class,
+                item,
+                null,
+                Collections.<DomainRequirement>emptyList()),
+                CredentialsMatchers.withId(credentialsId));
+
+        if (LOOKUP_CACHE.size() >= LOOKUP_CACHE_MAX_ENTRIES) {
+            LOOKUP_CACHE.clear();
+        }
+        LOOKUP_CACHE.put(key, new CachedLookup(c, now + LOOKUP_CACHE_TTL_MILLIS));
+        return c;
+    }
+
+    private static final class CachedLookup {
+        private final StandardUsernamePasswordCredentials credentials;
+        private final long expiresAt;
+
+        CachedLookup(StandardUsernamePasswordCredentials credentials, long expiresAt) {
+            this.credentials = credentials;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    static void invalidateLookupCache() {
+        LOOKUP_CACHE.clear();
+    }
+
+    /**
+     * Drops cached credential lookups whenever something that may hold credentials is saved, so rotated or
+     * removed credentials take effect on the next request.
+     */
+    @Extension
+    public static class LookupCacheInvalidator extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof SystemCredentialsProvider || o instanceof ItemGroup || o instanceof User) {
+                invalidateLookupCache();
+            }
+        }
+    }
+
     public static void validateCxCredentials(CxCredentials credentials) throws CxCredentialsException {
         if(StringUtils.isEmpty(credentials.getServerUrl()) ||
                 StringUtils.isEmpty(credentials.getUsername()) ||
@@ -0,0 +1,170 @@
+package com.checkmarx.jenkins;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Job;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Controller wide overview of the latest Checkmarx results of every job, served from the {@link CxAggregateStore}.
+ */
+@Extension
+public class CxDashboard implements RootAction {
+
+    private static final Logger LOGGER = Logger.getLogger(CxDashboard.class.getName());
+
+    @Override
+    public String getIconFileName() {
+        return getIconPath() + "CxIcon24x24.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Checkmarx";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "checkmarx";
+    }
+
+    public String getIconPath() {
+        return "/plugin/" + Jenkins.getInstance().getPluginManager().getPlugin("checkmarx").getShortName() + "/";
+    }
+
+    /**
+     * Entries of the jobs the current user can see, with totals over these jobs only.
+     */
+    public CxAggregateStore.Snapshot getSnapshot() {
+        List<CxAggregateStore.Entry> all = CxAggregateStore.get().getSnapshot().getEntries();
+        List<CxAggregateStore.Entry> ret = new ArrayList<CxAggregateStore.Entry>(all.size());
+        for (CxAggregateStore.Entry e : all) {
+            if (CxAggregateStore.isVisible(e)) {
+                ret.add(e);
+            }
+        }
+        return new CxAggregateStore.Snapshot(ret);
+    }
+
+    /**
+     * Plugin metrics in the Prometheus text format, for administrators (or their API tokens).
+     */
+    public void doMetrics(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        PrintWriter w = rsp.getWriter();
+        w.write(CxMetrics.get().scrape());
+        w.flush();
+    }
+
+    /**
+     * Re-evaluates the threshold policy given as {@code policy} against the retained builds of the jobs listed in
+     * {@code jobs} (full names, one per line or comma separated), or of all jobs, and returns a JSON summary.
+     */
+    @RequirePOST
+    public void doPolicyHistory(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        CxThresholdPolicy policy;
+        try {
+            policy = CxThresholdPolicy.get(StringUtils.defaultString(req.getParameter("policy")));
+        } catch (IllegalArgumentException e) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        if (policy.isEmpty()) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "The policy has no rules");
+            return;
+        }
+
+        List<Job<?, ?>> jobs = new ArrayList<Job<?, ?>>();
+        String names = req.getParameter("jobs");
+        if (StringUtils.isBlank(names)) {
+            for (Job<?, ?> job : Jenkins.getInstance().getAllItems(Job.class)) {
+                jobs.add(job);
+            }
+        } else {
+            for (String name : names.split("[,\\r\\n]+")) {
+                if (StringUtils.isNotBlank(name)) {
+                    Job<?, ?> job = Jenkins.getInstance().getItemByFullName(name.trim(), Job.class);
+                    if (job == null) {
+                        rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "No such job: " + name.trim());
+                        return;
+                    }
+                    jobs.add(job);
+                }
+            }
+        }
+
+        CxPolicyHistory history = CxPolicyHistory.evaluate(policy, jobs);
+        JsonGenerator json = CxResultsApi.startJson(rsp);
+        json.writeStartObject();
+        json.writeNumberField("builds", history.getBuilds());
+        json.writeNumberField("failing", history.getFailing());
+        json.writeNumberField("millis", history.getMillis());
+        json.writeArrayFieldStart("rules");
+        for (CxPolicyHistory.RuleSummary rule : history.getRules()) {
+            json.writeStartObject();
+            json.writeNumberField("line", rule.getLine());
+            json.writeStringField("rule", rule.getRule());
+            json.writeNumberField("failing", rule.getFailing());
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeArrayFieldStart("jobs");
+        for (CxPolicyHistory.JobSummary job : history.getJobs()) {
+            json.writeStartObject();
+            json.writeStringField("job", job.getJob());
+            json.writeNumberField("builds", job.getBuilds());
+            json.writeNumberField("failing", job.getFailing());
+            json.writeNumberField("errors", job.getErrors());
+            json.writeArrayFieldStart("failures");
+            for (CxPolicyHistory.Failure failure : job.getFailures()) {
+                json.writeStartObject();
+                json.writeNumberField("build", failure.getBuild());
+                json.writeNumberField("line", failure.getViolation().getLine());
+                json.writeNumberField("count", failure.getViolation().getCount());
+                json.writeNumberField("limit", failure.getViolation().getLimit());
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.close();
+    }
+
+    /**
+     * Populates the store once from existing builds when upgrading from a version without it.
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void initAggregateStore() {
+        final CxAggregateStore store = CxAggregateStore.get();
+        if (store.isStored()) {
+            return;
+        }
+        Timer.get().submit(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                store.rebuild();
+                LOGGER.info("Checkmarx overview populated in " + (System.currentTimeMillis() - start) + " ms");
+            }
+        });
+    }
+}
@@ -0,0 +1,121 @@
+package com.checkmarx.jenkins;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from 64 bit result fingerprints to int values, with linear probing over
+ * primitive arrays. Used for hash joins between builds, where boxing every key of a large report
+ * would dominate the cost.
+ * <p>
+ * Fingerprints are never zero (see {@link CxResultsIndex#fingerprint}), so zero marks a free slot.
+ * Not thread safe.
+ */
+final class CxFingerprintMap {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    CxFingerprintMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(long key) {
+        return slot(key) >= 0;
+    }
+
+    /**
+     * Returns the value mapped to the key, or {@code defaultValue} if there is none.
+     */
+    int get(long key, int defaultValue) {
+        int slot = slot(key);
+        return slot >= 0 ? values[slot] : defaultValue;
+    }
+
+    void put(long key, int value) {
+        int i = mix(key) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > keys.length * LOAD_FACTOR) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /**
+     * Adds {@code delta} to the value of the key (missing keys count as zero) and returns the new value.
+     */
+    int add(long key, int delta) {
+        int i = mix(key) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                return values[i] += delta;
+            }
+            i = (i + 1) & mask;
+        }
+        put(key, delta);
+        return delta;
+    }
+
+    long[] keys() {
+        long[] ret = new long[size];
+        int n = 0;
+        for (long key : keys) {
+            if (key != 0) {
+                ret[n++] = key;
+            }
+        }
+        return ret;
+    }
+
+    private int slot(long key) {
+        int i = mix(key) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "CxFingerprintMap" + Arrays.toString(keys());
+    }
+}
@@ -0,0 +1,185 @@
+package com.checkmarx.jenkins;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Java Flight Recorder events of the plugin's main operations, so recordings of a controller or an agent show
+ * Checkmarx work next to GC and I/O pauses.
+ * <p>
+ * The plugin is built for Java versions without {@code jdk.jfr}, so event types are declared at runtime through
+ * {@code jdk.jfr.EventFactory}. On JVMs without it, or while no recording has the event enabled,
+ * {@link EventType#begin()} returns a shared no-op event and instrumented code only pays for that check.
+ */
+public final class CxFlightRecorder {
+
+    private static final Logger LOGGER = Logger.getLogger(CxFlightRecorder.class.getName());
+
+    private static final String CATEGORY = "Checkmarx";
+
+    private static final Jfr JFR = Jfr.load();
+
+    public static final EventType SCAN_PHASE = new EventType("com.checkmarx.ScanPhase", "Scan Phase",
+            new String[]{"phase", "project"}, new Class<?>[]{String.class, String.class});
+    public static final EventType REPORT_WRITE = new EventType("com.checkmarx.ReportWrite", "Report Write",
+            new String[]{"job", "report", "bytes", "results"}, new Class<?>[]{String.class, String.class, long.class, long.class});
+    public static final EventType TREND_GRAPH = new EventType("com.checkmarx.TrendGraph", "Trend Graph",
+            new String[]{"job", "bytes", "cached"}, new Class<?>[]{String.class, long.class, boolean.class});
+    public static final EventType HTML_REPORT = new EventType("com.checkmarx.HtmlReport", "HTML Report",
+            new String[]{"job", "bytes"}, new Class<?>[]{String.class, long.class});
+    public static final EventType FORM_FILL = new EventType("com.checkmarx.FormFill", "Form Fill",
+            new String[]{"field", "results"}, new Class<?>[]{String.class, long.class});
+
+    private CxFlightRecorder() {
+        // Hides default constructor
+    }
+
+    /**
+     * One event type, with its fields in declaration order.
+     */
+    public static final class EventType {
+        private final Object factory;
+        private final Object jfrType;
+
+        EventType(String name, String label, String[] fieldNames, Class<?>[] fieldTypes) {
+            Object f = null;
+            Object t = null;
+            if (JFR != null) {
+                try {
+                    f = JFR.createFactory(name, label, fieldNames, fieldTypes);
+                    t = JFR.getEventType.invoke(f);
+                } catch (Exception e) {
+                    LOGGER.log(Level.FINE, "Failed to register flight recorder event " + name, e);
+                    f = null;
+                }
+            }
+            this.factory = f;
+            this.jfrType = t;
+        }
+
+        /**
+         * Starts an event; fill its fields and {@link Event#commit()} it when the operation is over.
+         */
+        public Event begin() {
+            if (factory == null) {
+                return Event.NOOP;
+            }
+            try {
+                if (!(Boolean) JFR.isEnabled.invoke(jfrType)) {
+                    return Event.NOOP;
+                }
+                Object event = JFR.newEvent.invoke(factory);
+                JFR.begin.invoke(event);
+                return new Event(event);
+            } catch (Exception e) {
+                return Event.NOOP;
+            }
+        }
+    }
+
+    /**
+     * A started event. All methods are no-ops when recording is off.
+     */
+    public static final class Event {
+        static final Event NOOP = new Event(null);
+
+        private final Object event;
+
+        Event(Object event) {
+            this.event = event;
+        }
+
+        /**
+         * Whether the event is recorded; lets callers skip computing field values otherwise.
+         */
+        public boolean isEnabled() {
+            return event != null;
+        }
+
+        public Event set(int field, Object value) {
+            if (event != null) {
+                try {
+                    JFR.set.invoke(event, field, value);
+                } catch (Exception e) {
+                    LOGGER.log(Level.FINEST, "Failed to set flight recorder event field", e);
+                }
+            }
+            return this;
+        }
+
+        public void commit() {
+            if (event != null) {
+                try {
+                    JFR.commit.invoke(event);
+                } catch (Exception e) {
+                    LOGGER.log(Level.FINEST, "Failed to commit flight recorder event", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reflective handles on the {@code jdk.jfr} API.
+     */
+    private static final class Jfr {
+        private Method create;
+        private Constructor<?> annotationElement;
+        private Constructor<?> valueDescriptor;
+        private Class<? extends Annotation> nameAnnotation;
+        private Class<? extends Annotation> labelAnnotation;
+        private Class<? extends Annotation> categoryAnnotation;
+        private Method getEventType;
+        private Method isEnabled;
+        private Method newEvent;
+        private Method begin;
+        private Method set;
+        private Method commit;
+
+        @SuppressWarnings("unchecked")
+        static Jfr load() {
+            try {
+                Jfr ret = new Jfr();
+                Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+                Class<?> element = Class.forName("jdk.jfr.AnnotationElement");
+                Class<?> descriptor = Class.forName("jdk.jfr.ValueDescriptor");
+                Class<?> event = Class.forName("jdk.jfr.Event");
+                ret.create = factory.getMethod("create", List.class, List.class);
+                ret.annotationElement = element.getConstructor(Class.class, Object.class);
+                ret.valueDescriptor = descriptor.getConstructor(Class.class, String.class);
+                ret.nameAnnotation = (Class<? extends Annotation>) Class.forName("jdk.jfr.Name");
+                ret.labelAnnotation = (Class<? extends Annotation>) Class.forName("jdk.jfr.Label");
+                ret.categoryAnnotation = (Class<? extends Annotation>) Class.forName("jdk.jfr.Category");
+                ret.getEventType = factory.getMethod("getEventType");
+                ret.isEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+                ret.newEvent = factory.getMethod("newEvent");
+                ret.begin = event.getMethod("begin");
+                ret.set = event.getMethod("set", int.class, Object.class);
+                ret.commit = event.getMethod("commit");
+                return ret;
+            } catch (ClassNotFoundException e) {
+                return null; // JVM without flight recorder events
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Flight recorder events are not available", e);
+                return null;
+            }
+        }
+
+        Object createFactory(String name, String label, String[] fieldNames, Class<?>[] fieldTypes) throws Exception {
+            List<Object> annotations = Arrays.asList(
+                    annotationElement.newInstance(nameAnnotation, name),
+                    annotationElement.newInstance(labelAnnotation, label),
+                    annotationElement.newInstance(categoryAnnotation, new String[]{CATEGORY}));
+            List<Object> fields = new ArrayList<Object>(fieldNames.length);
+            for (int i = 0; i < fieldNames.length; i++) {
+                fields.add(valueDescriptor.newInstance(fieldTypes[i], fieldNames[i]));
+            }
+            return create.invoke(null, annotations, fields);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.checkmarx.jenkins;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.listeners.ItemListener;
+
+/**
+ * Keeps the {@link CxAggregateStore} keyed by the current job names.
+ */
+@Extension
+public class CxItemListener extends ItemListener {
+
+    @Override
+    public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+        if (item instanceof Job) {
+            CxAggregateStore.get().renameJob(oldFullName, newFullName);
+        }
+    }
+
+    @Override
+    public void onDeleted(Item item) {
+        if (item instanceof Job) {
+            CxAggregateStore.get().removeJob(item.getFullName());
+        } else if (item instanceof ItemGroup) {
+            CxAggregateStore.get().removeJobsIn(item.getFullName());
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.checkmarx.jenkins;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Shared Jackson mapper. Creating an {@link ObjectMapper} is expensive and, once configured, it is thread safe.
+ */
+final class CxJson {
+
+    static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private CxJson() {
+        // Hides default constructor
+    }
+}
@@ -3,20 +3,88 @@ package com.checkmarx.jenkins;
 
 import org.slf4j.Logger;
 import org.slf4j.Marker;
+import org.slf4j.helpers.FormattingTuple;
+import org.slf4j.helpers.MessageFormatter;
 
 import java.io.PrintStream;
-
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Job console logger handed to the Checkmarx client.
+ * <p>
+ * Messages below the job's log level are dropped before they are formatted. Lines are collected in a buffer and
+ * written to the console in batches, since on an agent every write to the build log is a remoting call. The
+ * buffer is written out when it grows large, when it has been held for a while, on warnings and errors, and at
+ * phase boundaries through {@link #flush()}. The time limit is kept by a flush scheduled when the buffer gets its
+ * first line, so lines do not wait for the next write while a scan is polled without output.
+ */
 public class CxLoggerAdapter implements Logger {
 
+    public static final String LEVEL_DEBUG = "DEBUG";
+    public static final String LEVEL_INFO = "INFO";
+    public static final String LEVEL_WARN = "WARN";
+    public static final String LEVEL_ERROR = "ERROR";
+
+    private static final int DEBUG = 0;
+    private static final int INFO = 1;
+    private static final int WARN = 2;
+    private static final int ERROR = 3;
+
     private static final String INFO_PREFIX = "[Cx-Info]: ";
     private static final String DEBUG_PREFIX = "[Cx-Debug]: ";
     private static final String ERROR_PREFIX = "[Cx-Error]: ";
     private static final String WARN_PREFIX = "[Cx-Warning]: ";
 
+    private static final int FLUSH_SIZE = 8 * 1024;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+
     private final PrintStream log;
+    private final int level;
+    private final StringBuilder buffer = new StringBuilder(FLUSH_SIZE);
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * Timer of the console writers of the JVM, which may be an agent, so it does not rely on Jenkins timers.
+     * Tasks must be short.
+     */
+    static final class ConsoleTimer {
+        static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Checkmarx console timer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        static {
+            TIMER.setRemoveOnCancelPolicy(true);
+        }
+    }
 
     public CxLoggerAdapter(PrintStream log) {
+        this(log, LEVEL_DEBUG);
+    }
+
+    public CxLoggerAdapter(PrintStream log, String level) {
         this.log = log;
+        this.level = parseLevel(level);
+    }
+
+    private static int parseLevel(String level) {
+        if (LEVEL_INFO.equalsIgnoreCase(level)) {
+            return INFO;
+        }
+        if (LEVEL_WARN.equalsIgnoreCase(level)) {
+            return WARN;
+        }
+        if (LEVEL_ERROR.equalsIgnoreCase(level)) {
+            return ERROR;
+        }
+        return DEBUG;
     }
 
     @Override
@@ -26,17 +94,17 @@ public class CxLoggerAdapter implements Logger {
 
 
     public boolean isDebugEnabled() {
-        return true;
+        return level <= DEBUG;
     }
 
     @Override
     public boolean isInfoEnabled() {
-        return true;
+        return level <= INFO;
     }
 
     @Override
     public boolean isWarnEnabled() {
-        return true;
+        return level <= WARN;
     }
 
     @Override
@@ -45,48 +113,85 @@ public class CxLoggerAdapter implements Logger {
     }
 
     public void debug(String s) {
-        log.println(DEBUG_PREFIX + s);
+        if (isDebugEnabled()) {
+            write(DEBUG_PREFIX, s, null, false);
+        }
     }
 
     public void debug(String s, Throwable throwable) {
-        log.println(DEBUG_PREFIX + s);
-        if(throwable != null) {
-            throwable.printStackTrace(log);
+        if (isDebugEnabled()) {
+            write(DEBUG_PREFIX, s, throwable, false);
         }
     }
 
     public void info(String s) {
-        log.println(INFO_PREFIX + s);
+        if (isInfoEnabled()) {
+            write(INFO_PREFIX, s, null, false);
+        }
     }
 
     public void info(String s, Throwable throwable) {
-        log.println(INFO_PREFIX + s);
-        if(throwable != null) {
-            throwable.printStackTrace(log);
+        if (isInfoEnabled()) {
+            write(INFO_PREFIX, s, throwable, false);
         }
     }
 
     public void warn(String s) {
-        log.println(WARN_PREFIX + s);
-
+        if (isWarnEnabled()) {
+            write(WARN_PREFIX, s, null, true);
+        }
     }
 
     public void warn(String s, Throwable throwable) {
-        log.println(WARN_PREFIX + s);
-        if(throwable != null) {
-            throwable.printStackTrace(log);
+        if (isWarnEnabled()) {
+            write(WARN_PREFIX, s, throwable, true);
         }
     }
 
     public void error(String s) {
-        log.println(ERROR_PREFIX + s);
+        write(ERROR_PREFIX, s, null, true);
     }
 
     public void error(String s, Throwable throwable) {
-        log.println(ERROR_PREFIX + s);
-        if(throwable != null) {
+        write(ERROR_PREFIX, s, throwable, true);
+    }
+
+    /**
+     * Writes out everything buffered so far. Called at phase boundaries and when the step ends.
+     */
+    public synchronized void flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (buffer.length() > 0) {
+            log.print(buffer);
+            buffer.setLength(0);
+        }
+        log.flush();
+    }
+
+    private synchronized void write(String prefix, String message, Throwable throwable, boolean flush) {
+        buffer.append(prefix).append(message).append(System.lineSeparator());
+        if (throwable != null) {
+            flush();
             throwable.printStackTrace(log);
         }
+        if (flush || buffer.length() >= FLUSH_SIZE) {
+            flush();
+        } else if (scheduledFlush == null && buffer.length() > 0) {
+            scheduledFlush = ConsoleTimer.TIMER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void format(String prefix, boolean flush, String format, Object... arguments) {
+        FormattingTuple tuple = MessageFormatter.arrayFormat(format, arguments);
+        write(prefix, tuple.getMessage(), tuple.getThrowable(), flush);
     }
 
     public String toString() {
@@ -235,59 +340,78 @@ public class CxLoggerAdapter implements Logger {
     }
 
     public void debug(String s, Object o) {
-
+        if (isDebugEnabled()) {
+            format(DEBUG_PREFIX, false, s, o);
+        }
     }
 
     public void debug(String s, Object o, Object o1) {
+        if (isDebugEnabled()) {
+            format(DEBUG_PREFIX, false, s, o, o1);
+        }
     }
 
     public void debug(String s, Object... objects) {
-
+        if (isDebugEnabled()) {
+            format(DEBUG_PREFIX, false, s, objects);
+        }
     }
 
     @Override
     public void info(String format, Object arg) {
-
+        if (isInfoEnabled()) {
+            format(INFO_PREFIX, false, format, arg);
+        }
     }
 
     @Override
     public void info(String format, Object arg1, Object arg2) {
-
+        if (isInfoEnabled()) {
+            format(INFO_PREFIX, false, format, arg1, arg2);
+        }
     }
 
     @Override
     public void info(String format, Object... arguments) {
-
+        if (isInfoEnabled()) {
+            format(INFO_PREFIX, false, format, arguments);
+        }
     }
 
     @Override
     public void warn(String format, Object arg) {
-
+        if (isWarnEnabled()) {
+            format(WARN_PREFIX, true, format, arg);
+        }
     }
 
     @Override
     public void warn(String format, Object... arguments) {
-
+        if (isWarnEnabled()) {
+            format(WARN_PREFIX, true, format, arguments);
+        }
     }
 
     @Override
     public void warn(String format, Object arg1, Object arg2) {
-
+        if (isWarnEnabled()) {
+            format(WARN_PREFIX, true, format, arg1, arg2);
+        }
     }
 
 
     @Override
     public void error(String format, Object arg) {
-
+        format(ERROR_PREFIX, true, format, arg);
     }
 
     @Override
     public void error(String format, Object arg1, Object arg2) {
-
+        format(ERROR_PREFIX, true, format, arg1, arg2);
     }
 
     @Override
     public void error(String format, Object... arguments) {
-
+        format(ERROR_PREFIX, true, format, arguments);
     }
 }
@@ -0,0 +1,280 @@
+package com.checkmarx.jenkins;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Operational metrics of the plugin on the controller, served in the Prometheus text format at
+ * {@code /checkmarx/metrics} (see {@link CxDashboard#doMetrics}).
+ * <p>
+ * Recording only touches {@link CxStripedCounter}s, found through concurrent map reads, so instrumented code
+ * never waits on a lock. Phases that run on an agent are recorded here once their timings come back with the
+ * scan results.
+ * <p>
+ * Bytes uploaded are not recorded: sources and dependency results are packed and uploaded inside the client
+ * library, which reports neither their size nor the bytes sent.
+ */
+public final class CxMetrics {
+
+    static final String SCANS_IN_FLIGHT = "checkmarx_scans_in_flight";
+    static final String PHASE_DURATION = "checkmarx_scan_phase_duration_seconds";
+    static final String REPORT_SIZE = "checkmarx_report_size_bytes";
+    static final String LOGINS = "checkmarx_logins_total";
+    static final String LOGIN_DURATION = "checkmarx_login_duration_seconds";
+    static final String FORM_CACHE_REQUESTS = "checkmarx_form_cache_requests_total";
+    static final String SERVER_REQUESTS = "checkmarx_server_requests_total";
+
+    private static final long[] DURATION_BUCKETS_MILLIS = {100, 500, 1000, 5000, 10000, 30000, 60000, 120000, 300000, 600000, 1800000, 3600000};
+    private static final long[] SIZE_BUCKETS_BYTES = {1 << 10, 10 << 10, 100 << 10, 1 << 20, 10 << 20, 100 << 20, 1 << 30};
+
+    private static final CxMetrics INSTANCE = new CxMetrics();
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<String, Family>();
+    // server requests per second over the last minute, slots indexed by second modulo 60
+    private final AtomicLongArray requestsPerSecond = new AtomicLongArray(60);
+    private final AtomicLongArray requestSeconds = new AtomicLongArray(60);
+
+    private CxMetrics() {
+        family(SCANS_IN_FLIGHT, "gauge", "Checkmarx steps currently running, per server.");
+        family(PHASE_DURATION, "histogram", "Duration of the phases of Checkmarx steps.");
+        family(REPORT_SIZE, "histogram", "Size of the reports stored with builds.");
+        family(LOGINS, "counter", "Logins to Checkmarx servers.");
+        family(LOGIN_DURATION, "histogram", "Duration of logins to Checkmarx servers.");
+        family(FORM_CACHE_REQUESTS, "counter", "Job configuration form lookups of Checkmarx server lists, by cache outcome.");
+        family(SERVER_REQUESTS, "counter", "Requests made to Checkmarx servers from the controller.");
+    }
+
+    public static CxMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Striped counter or gauge of one label combination.
+     */
+    static final class Counter {
+        private final CxStripedCounter value = new CxStripedCounter();
+
+        void inc() {
+            value.increment();
+        }
+
+        void dec() {
+            value.add(-1);
+        }
+
+        void add(long delta) {
+            value.add(delta);
+        }
+
+        long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * Histogram of one label combination, with cumulative buckets rendered in {@code unit}s of the recorded
+     * values.
+     */
+    static final class Histogram {
+        private final long[] bounds;
+        private final double unit;
+        private final CxStripedCounter[] buckets;
+        private final CxStripedCounter sum = new CxStripedCounter();
+
+        Histogram(long[] bounds, double unit) {
+            this.bounds = bounds;
+            this.unit = unit;
+            this.buckets = new CxStripedCounter[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new CxStripedCounter();
+            }
+        }
+
+        void observe(long value) {
+            int i = 0;
+            while (i < bounds.length && value > bounds[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            sum.add(value);
+        }
+    }
+
+    private static final class Family {
+        private final String name;
+        private final String type;
+        private final String help;
+        private final ConcurrentMap<String, Object> children = new ConcurrentHashMap<String, Object>();
+
+        Family(String name, String type, String help) {
+            this.name = name;
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    public void scanStarted(String serverUrl) {
+        counter(SCANS_IN_FLIGHT, "server", serverUrl).inc();
+    }
+
+    public void scanFinished(String serverUrl) {
+        counter(SCANS_IN_FLIGHT, "server", serverUrl).dec();
+    }
+
+    /**
+     * Records the phases of one step, including the ones timed on the agent.
+     */
+    public void recordPhases(CxPhaseTimings timings) {
+        for (CxPhaseTimings.Phase p : timings.getPhases()) {
+            histogram(PHASE_DURATION, DURATION_BUCKETS_MILLIS, 1000, "phase", p.getKey()).observe(p.getDuration());
+            if (CxPhaseTimings.LOGIN.equals(p.getKey())) {
+                recordLogin(p.getDuration());
+            }
+        }
+    }
+
+    public void recordReportSize(String report, long bytes) {
+        histogram(REPORT_SIZE, SIZE_BUCKETS_BYTES, 1, "report", report).observe(bytes);
+    }
+
+    public void recordLogin(long millis) {
+        counter(LOGINS).inc();
+        histogram(LOGIN_DURATION, DURATION_BUCKETS_MILLIS, 1000).observe(millis);
+    }
+
+    public void recordFormCacheLookup(boolean hit) {
+        counter(FORM_CACHE_REQUESTS, "result", hit ? "hit" : "miss").inc();
+    }
+
+    public void recordServerRequests(int count) {
+        counter(SERVER_REQUESTS).add(count);
+        long second = System.currentTimeMillis() / 1000;
+        int slot = (int) (second % 60);
+        long stamp = requestSeconds.get(slot);
+        if (stamp != second && requestSeconds.compareAndSet(slot, stamp, second)) {
+            requestsPerSecond.set(slot, 0);
+        }
+        requestsPerSecond.addAndGet(slot, count);
+    }
+
+    /**
+     * Server requests in the 60 seconds before the current one.
+     */
+    long getServerRequestsPerMinute() {
+        long now = System.currentTimeMillis() / 1000;
+        long ret = 0;
+        for (int slot = 0; slot < 60; slot++) {
+            long second = requestSeconds.get(slot);
+            if (second < now && now - second <= 60) {
+                ret += requestsPerSecond.get(slot);
+            }
+        }
+        return ret;
+    }
+
+    Counter counter(String name, String... labels) {
+        return (Counter) child(name, labels, null, 0);
+    }
+
+    Histogram histogram(String name, long[] bounds, double unit, String... labels) {
+        return (Histogram) child(name, labels, bounds, unit);
+    }
+
+    private Object child(String name, String[] labels, long[] bounds, double unit) {
+        Family family = families.get(name);
+        String key = labels(labels);
+        Object ret = family.children.get(key);
+        if (ret == null) {
+            Object created = bounds == null ? new Counter() : new Histogram(bounds, unit);
+            ret = family.children.putIfAbsent(key, created);
+            if (ret == null) {
+                ret = created;
+            }
+        }
+        return ret;
+    }
+
+    private void family(String name, String type, String help) {
+        families.put(name, new Family(name, type, help));
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text exposition format.
+     */
+    public String scrape() {
+        StringBuilder sb = new StringBuilder(4096);
+        for (Family family : new TreeMap<String, Family>(families).values()) {
+            sb.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            sb.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> e : new TreeMap<String, Object>(family.children).entrySet()) {
+                if (e.getValue() instanceof Counter) {
+                    sample(sb, family.name, e.getKey(), null, ((Counter) e.getValue()).get());
+                } else {
+                    writeHistogram(sb, family.name, e.getKey(), (Histogram) e.getValue());
+                }
+            }
+        }
+
+        long hits = counter(FORM_CACHE_REQUESTS, "result", "hit").get();
+        long misses = counter(FORM_CACHE_REQUESTS, "result", "miss").get();
+        sb.append("# HELP checkmarx_form_cache_hit_ratio Share of form lookups served from the cache.\n");
+        sb.append("# TYPE checkmarx_form_cache_hit_ratio gauge\n");
+        sample(sb, "checkmarx_form_cache_hit_ratio", "", null, hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+
+        sb.append("# HELP checkmarx_server_requests_per_minute Requests made to Checkmarx servers from the controller in the last minute.\n");
+        sb.append("# TYPE checkmarx_server_requests_per_minute gauge\n");
+        sample(sb, "checkmarx_server_requests_per_minute", "", null, getServerRequestsPerMinute());
+        return sb.toString();
+    }
+
+    private static void writeHistogram(StringBuilder sb, String name, String labels, Histogram h) {
+        long cumulative = 0;
+        for (int i = 0; i < h.buckets.length; i++) {
+            cumulative += h.buckets[i].sum();
+            String le = i < h.bounds.length ? format(h.bounds[i] / h.unit) : "+Inf";
+            sample(sb, name + "_bucket", labels, "le=\"" + le + '"', cumulative);
+        }
+        sample(sb, name + "_sum", labels, null, h.sum.sum() / h.unit);
+        sample(sb, name + "_count", labels, null, cumulative);
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, String extraLabel, Object value) {
+        sb.append(name);
+        if (!labels.isEmpty() || extraLabel != null) {
+            sb.append('{').append(labels);
+            if (extraLabel != null) {
+                sb.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+            }
+            sb.append('}');
+        }
+        sb.append(' ').append(value instanceof Double ? format((Double) value) : value).append('\n');
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value) ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static String labels(String[] labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
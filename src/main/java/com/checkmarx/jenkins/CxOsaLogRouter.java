@@ -0,0 +1,173 @@
+package com.checkmarx.jenkins;
+
+import java.io.PrintStream;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Routes the log records of the OSA component scan (the {@code org.whitesource} loggers) to the console of the
+ * build that runs the scan.
+ * <p>
+ * A single handler is attached to the {@code org.whitesource} logger once per JVM, so records of unrelated
+ * loggers never reach it. The target is held in an inheritable thread local set for the duration of the scan,
+ * which keeps concurrent builds on the same agent from seeing each other's output and covers the threads the
+ * component scan starts itself.
+ * <p>
+ * Threads started during the scan keep the inherited target after the route is closed, e.g. pooled threads of
+ * the component scan. Closing a route therefore empties its target: those threads then drop their records,
+ * and the sink, with the console stream it writes to, is no longer reachable from them. Threads that existed
+ * before the route was opened, such as pool threads created by an earlier scan, do not inherit the target, and
+ * their records are not shown in any build console.
+ */
+final class CxOsaLogRouter {
+
+    static final String LOGGER_NAME = "org.whitesource";
+
+    private static final InheritableThreadLocal<Target> TARGET = new InheritableThreadLocal<Target>();
+
+    // strong reference, so the logger and its handler are not collected while unused
+    private static Logger osaLogger;
+
+    private CxOsaLogRouter() {
+        // Hides default constructor
+    }
+
+    /**
+     * Receives the records of one build's component scan.
+     */
+    abstract static class Sink {
+        abstract void publish(LogRecord record);
+
+        void flush() {
+        }
+
+        void close() {
+        }
+    }
+
+    /**
+     * Prints every record to the build console, as formatted by {@link ComponentScanFormatter}.
+     */
+    static final class ConsoleSink extends Sink {
+        private final PrintStream out;
+        private final Formatter formatter = new ComponentScanFormatter();
+
+        ConsoleSink(PrintStream out) {
+            this.out = out;
+        }
+
+        @Override
+        void publish(LogRecord record) {
+            String line = formatter.format(record);
+            if (!line.isEmpty()) {
+                out.print(line);
+            }
+        }
+
+        @Override
+        void flush() {
+            out.flush();
+        }
+
+        @Override
+        void close() {
+            out.flush();
+        }
+    }
+
+    /**
+     * Sink of one route, shared with the threads that inherited it; emptied when the route is closed.
+     */
+    private static final class Target {
+        volatile Sink sink;
+
+        Target(Sink sink) {
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * Routing of the current thread, restored to its previous target on {@link #close()}.
+     */
+    static final class Route {
+        private final Target target;
+        private final Target previous;
+
+        private Route(Target target, Target previous) {
+            this.target = target;
+            this.previous = previous;
+        }
+
+        /**
+         * Stops routing, also for the threads that inherited the route, and closes the sink.
+         */
+        void close() {
+            if (previous == null) {
+                TARGET.remove();
+            } else {
+                TARGET.set(previous);
+            }
+            Sink sink = target.sink;
+            target.sink = null;
+            if (sink != null) {
+                sink.close();
+            }
+        }
+    }
+
+    /**
+     * Sends OSA log records logged by this thread, and by the threads it starts, to {@code sink} until the
+     * returned route is closed.
+     */
+    static Route route(Sink sink) {
+        install();
+        Target target = new Target(sink);
+        Route ret = new Route(target, TARGET.get());
+        TARGET.set(target);
+        return ret;
+    }
+
+    private static Sink currentSink() {
+        Target target = TARGET.get();
+        return target == null ? null : target.sink;
+    }
+
+    private static synchronized void install() {
+        if (osaLogger != null) {
+            return;
+        }
+        Logger logger = Logger.getLogger(LOGGER_NAME);
+        logger.addHandler(new RoutingHandler());
+        osaLogger = logger;
+    }
+
+    private static final class RoutingHandler extends Handler {
+
+        RoutingHandler() {
+            setLevel(Level.ALL);
+        }
+
+        @Override
+        public void publish(LogRecord record) {
+            Sink sink = currentSink();
+            if (sink != null && isLoggable(record)) {
+                sink.publish(record);
+            }
+        }
+
+        @Override
+        public void flush() {
+            Sink sink = currentSink();
+            if (sink != null) {
+                sink.flush();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
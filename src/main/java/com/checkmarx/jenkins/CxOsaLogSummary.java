@@ -0,0 +1,167 @@
+package com.checkmarx.jenkins;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Summarizing sink for the OSA component scan log. Warnings and errors are printed in full; everything else is
+ * only counted per message template, with a progress line at a fixed interval, also while the scan logs nothing,
+ * and the most frequent templates listed when the scan is over. Optionally, every record is also written to a gzip compressed log file.
+ * <p>
+ * Message templates are the unformatted JUL messages. Messages logged without parameters have their digits
+ * masked instead, so e.g. counters in otherwise identical lines do not split a template.
+ */
+final class CxOsaLogSummary extends CxOsaLogRouter.Sink {
+
+    static final String FULL_LOG_FILE_NAME = "OSAComponentScan.log.gz";
+
+    private static final long PROGRESS_MILLIS = Long.getLong(CxOsaLogSummary.class.getName() + ".progressSeconds", 10) * 1000;
+    private static final int TOP_TEMPLATES = 10;
+    private static final int MAX_TEMPLATE_LENGTH = 120;
+    private static final int MAX_TEMPLATES = 10000;
+
+    private final PrintStream console;
+    private final Formatter formatter = new ComponentScanFormatter();
+    private final Map<String, int[]> templates = new HashMap<String, int[]>();
+    private Writer fullLog;
+    private int records;
+    private int warnings;
+    private final ScheduledFuture<?> progress;
+
+    /**
+     * @param fullLogFile file to write every record to, or null
+     */
+    CxOsaLogSummary(PrintStream console, File fullLogFile) throws IOException {
+        this.console = console;
+        if (fullLogFile != null) {
+            File dir = fullLogFile.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Failed to create " + dir);
+            }
+            fullLog = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(fullLogFile)), Charset.forName("UTF-8"));
+        }
+        this.progress = CxLoggerAdapter.ConsoleTimer.TIMER.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                printProgress();
+            }
+        }, PROGRESS_MILLIS, PROGRESS_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void printProgress() {
+        console.println("[OSA ComponentScan]: " + records + " messages so far, " + warnings + " warnings or errors");
+        console.flush();
+    }
+
+    @Override
+    synchronized void publish(LogRecord record) {
+        records++;
+        String line = null;
+        if (fullLog != null) {
+            line = formatter.format(record);
+            try {
+                fullLog.write(line);
+            } catch (IOException e) {
+                console.println("[OSA ComponentScan]: Failed to write the full log, continuing without it: " + e.getMessage());
+                IOUtils.closeQuietly(fullLog);
+                fullLog = null;
+            }
+        }
+
+        if (record.getLevel().intValue() >= Level.WARNING.intValue()) {
+            warnings++;
+            console.print(line != null ? line : formatter.format(record));
+        } else {
+            count(template(record));
+        }
+    }
+
+    @Override
+    synchronized void flush() {
+        console.flush();
+    }
+
+    /**
+     * Prints the summary and closes the full log.
+     */
+    @Override
+    synchronized void close() {
+        progress.cancel(false);
+        console.println("[OSA ComponentScan]: " + records + " messages, " + warnings + " warnings or errors");
+        List<Map.Entry<String, int[]>> sorted = new ArrayList<Map.Entry<String, int[]>>(templates.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<String, int[]>>() {
+            @Override
+            public int compare(Map.Entry<String, int[]> a, Map.Entry<String, int[]> b) {
+                return b.getValue()[0] - a.getValue()[0];
+            }
+        });
+        for (Map.Entry<String, int[]> e : sorted.subList(0, Math.min(TOP_TEMPLATES, sorted.size()))) {
+            console.println("[OSA ComponentScan]:   " + e.getValue()[0] + " x " + e.getKey());
+        }
+        console.flush();
+        IOUtils.closeQuietly(fullLog);
+        fullLog = null;
+    }
+
+    private void count(String template) {
+        int[] count = templates.get(template);
+        if (count == null) {
+            if (templates.size() >= MAX_TEMPLATES) {
+                template = "(other messages)";
+                count = templates.get(template);
+            }
+            if (count == null) {
+                count = new int[1];
+                templates.put(template, count);
+            }
+        }
+        count[0]++;
+    }
+
+    private static String template(LogRecord record) {
+        String message = record.getMessage();
+        if (message == null) {
+            return "";
+        }
+        Object[] parameters = record.getParameters();
+        boolean mask = parameters == null || parameters.length == 0;
+        int length = Math.min(message.length(), MAX_TEMPLATE_LENGTH);
+        StringBuilder sb = null;
+        for (int i = 0; i < length; i++) {
+            char c = message.charAt(i);
+            if (mask && c >= '0' && c <= '9') {
+                if (sb == null) {
+                    sb = new StringBuilder(length).append(message, 0, i);
+                }
+                if (sb.length() == 0 || sb.charAt(sb.length() - 1) != '#') {
+                    sb.append('#');
+                }
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        if (sb != null) {
+            return sb.toString();
+        }
+        return length < message.length() ? message.substring(0, length) : message;
+    }
+}
@@ -0,0 +1,94 @@
+package com.checkmarx.jenkins;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Durations of the phases of one Checkmarx step. Start times are kept relative to the start of the step, so
+ * phases timed on the agent can be merged without depending on its clock.
+ */
+public class CxPhaseTimings implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String CONFIG = "CONFIG";
+    public static final String LOGIN = "LOGIN";
+    public static final String SAST_UPLOAD = "SAST_UPLOAD";
+    public static final String OSA_UPLOAD = "OSA_UPLOAD";
+    public static final String SAST_WAIT = "SAST_WAIT";
+    public static final String OSA_WAIT = "OSA_WAIT";
+    public static final String THRESHOLDS = "THRESHOLDS";
+    public static final String HTML_REPORT = "HTML_REPORT";
+    public static final String REPORTS = "REPORTS";
+    public static final String POLICY = "POLICY";
+
+    private final long origin = System.currentTimeMillis();
+    private final List<Phase> phases = new ArrayList<Phase>();
+
+    public static class Phase implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String key;
+        private final String name;
+        private final long start;
+        private final long duration;
+
+        Phase(String key, String name, long start, long duration) {
+            this.key = key;
+            this.name = name;
+            this.start = start;
+            this.duration = duration;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Milliseconds from the start of the step.
+         */
+        public long getStart() {
+            return start;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+    }
+
+    /**
+     * Records a phase that started at {@code startMillis} (as returned by {@link System#currentTimeMillis()})
+     * and ends now.
+     */
+    public synchronized void record(String key, String name, long startMillis) {
+        long now = System.currentTimeMillis();
+        phases.add(new Phase(key, name, startMillis - origin, now - startMillis));
+    }
+
+    /**
+     * Adds the phases timed elsewhere (on the agent), whose own start was {@code startMillis} on this side.
+     */
+    public synchronized void merge(CxPhaseTimings other, long startMillis) {
+        if (other == null) {
+            return;
+        }
+        long offset = startMillis - origin;
+        for (Phase p : other.getPhases()) {
+            phases.add(new Phase(p.key, p.name, offset + p.start, p.duration));
+        }
+    }
+
+    public synchronized List<Phase> getPhases() {
+        return Collections.unmodifiableList(new ArrayList<Phase>(phases));
+    }
+
+    public synchronized boolean isEmpty() {
+        return phases.isEmpty();
+    }
+}
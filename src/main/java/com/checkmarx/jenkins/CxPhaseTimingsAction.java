@@ -0,0 +1,86 @@
+package com.checkmarx.jenkins;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.EnvironmentContributingAction;
+
+import java.util.List;
+
+/**
+ * Phase timings of the Checkmarx step of a build, shown as a timeline on the build page and exported to the
+ * build environment as {@code CX_PHASE_<phase>_MILLIS} and {@code CX_PHASES_TOTAL_MILLIS}.
+ */
+public class CxPhaseTimingsAction implements EnvironmentContributingAction {
+
+    private final CxPhaseTimings timings;
+
+    public CxPhaseTimingsAction(CxPhaseTimings timings) {
+        this.timings = timings;
+    }
+
+    public List<CxPhaseTimings.Phase> getPhases() {
+        return timings.getPhases();
+    }
+
+    /**
+     * Time from the start of the step to the end of its last phase.
+     */
+    public long getTotalMillis() {
+        long end = 0;
+        for (CxPhaseTimings.Phase p : getPhases()) {
+            end = Math.max(end, p.getStart() + p.getDuration());
+        }
+        return end;
+    }
+
+    /**
+     * Position of a phase on the timeline, in percent of the total.
+     */
+    public double getOffsetPercent(CxPhaseTimings.Phase phase) {
+        long total = getTotalMillis();
+        return total == 0 ? 0 : phase.getStart() * 100.0 / total;
+    }
+
+    public double getWidthPercent(CxPhaseTimings.Phase phase) {
+        long total = getTotalMillis();
+        return total == 0 ? 0 : Math.max(0.5, phase.getDuration() * 100.0 / total);
+    }
+
+    public String formatMillis(long millis) {
+        if (millis < 1000) {
+            return millis + " ms";
+        }
+        long seconds = millis / 1000;
+        if (seconds < 60) {
+            return String.format("%.1f s", millis / 1000.0);
+        }
+        return String.format("%d min %d s", seconds / 60, seconds % 60);
+    }
+
+    /**
+     * Adds to the values already in {@code env}, so a build running several Checkmarx steps gets their sums.
+     */
+    public void buildEnvVars(AbstractBuild<?, ?> build, EnvVars env) {
+        for (CxPhaseTimings.Phase p : getPhases()) {
+            add(env, "CX_PHASE_" + p.getKey() + "_MILLIS", p.getDuration());
+        }
+        add(env, "CX_PHASES_TOTAL_MILLIS", getTotalMillis());
+    }
+
+    private static void add(EnvVars env, String name, long millis) {
+        String previous = env.get(name);
+        env.put(name, Long.toString(previous == null ? millis : Long.parseLong(previous) + millis));
+    }
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return null;
+    }
+}
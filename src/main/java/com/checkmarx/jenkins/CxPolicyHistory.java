@@ -0,0 +1,346 @@
+package com.checkmarx.jenkins;
+
+import hudson.model.Job;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Re-evaluates a candidate {@link CxThresholdPolicy} against every retained build of some jobs, to see how many
+ * builds would have failed under it.
+ * <p>
+ * Builds are found by listing the build directories of the jobs, so no build is loaded. Each job's builds are
+ * split into slices of consecutive builds evaluated in parallel on a fork-join pool; within a slice, the results
+ * of one build are kept as the previous results of the next, so rules comparing with the previous build do not
+ * read any report twice. Indexes are read around the cache of loaded indexes, which serves the result pages, and
+ * builds without a current index are parsed in memory, so the pass leaves the build directories untouched.
+ */
+public final class CxPolicyHistory {
+
+    private static final Logger LOGGER = Logger.getLogger(CxPolicyHistory.class.getName());
+
+    private static final int SLICE = Integer.getInteger(CxPolicyHistory.class.getName() + ".slice", 32);
+    private static final int MAX_LISTED_FAILURES = 100;
+
+    private final List<JobSummary> jobs = new ArrayList<JobSummary>();
+    private final TreeMap<Integer, RuleSummary> rules = new TreeMap<Integer, RuleSummary>();
+    private long millis;
+
+    private CxPolicyHistory() {
+    }
+
+    private static final class PoolHolder {
+        static final ForkJoinPool POOL = new ForkJoinPool(Integer.getInteger(CxPolicyHistory.class.getName() + ".parallelism",
+                Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * One retained build with stored results.
+     */
+    static final class BuildDir {
+        final int number;
+        final File checkmarxDir;
+
+        BuildDir(int number, File checkmarxDir) {
+            this.number = number;
+            this.checkmarxDir = checkmarxDir;
+        }
+    }
+
+    /**
+     * A build that would have failed.
+     */
+    public static final class Failure {
+        private final int build;
+        private final CxThresholdPolicy.Violation violation;
+
+        Failure(int build, CxThresholdPolicy.Violation violation) {
+            this.build = build;
+            this.violation = violation;
+        }
+
+        public int getBuild() {
+            return build;
+        }
+
+        public CxThresholdPolicy.Violation getViolation() {
+            return violation;
+        }
+    }
+
+    public static final class JobSummary {
+        private final String job;
+        private final int builds;
+        private final int failing;
+        private final int errors;
+        private final List<Failure> failures;
+
+        JobSummary(String job, int builds, int failing, int errors, List<Failure> failures) {
+            this.job = job;
+            this.builds = builds;
+            this.failing = failing;
+            this.errors = errors;
+            this.failures = failures;
+        }
+
+        public String getJob() {
+            return job;
+        }
+
+        /**
+         * Builds with stored results.
+         */
+        public int getBuilds() {
+            return builds;
+        }
+
+        public int getFailing() {
+            return failing;
+        }
+
+        /**
+         * Builds whose stored results could not be read.
+         */
+        public int getErrors() {
+            return errors;
+        }
+
+        /**
+         * The most recent failing builds, newest first.
+         */
+        public List<Failure> getFailures() {
+            return failures;
+        }
+    }
+
+    /**
+     * Failing builds per policy rule, counting the first failing rule of every build.
+     */
+    public static final class RuleSummary {
+        private final int line;
+        private final String rule;
+        private int failing;
+
+        RuleSummary(int line, String rule) {
+            this.line = line;
+            this.rule = rule;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getRule() {
+            return rule;
+        }
+
+        public int getFailing() {
+            return failing;
+        }
+    }
+
+    public List<JobSummary> getJobs() {
+        return jobs;
+    }
+
+    public List<RuleSummary> getRules() {
+        return new ArrayList<RuleSummary>(rules.values());
+    }
+
+    public int getBuilds() {
+        int ret = 0;
+        for (JobSummary j : jobs) {
+            ret += j.builds;
+        }
+        return ret;
+    }
+
+    public int getFailing() {
+        int ret = 0;
+        for (JobSummary j : jobs) {
+            ret += j.failing;
+        }
+        return ret;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * Evaluates the policy against the retained builds of the given jobs.
+     */
+    public static CxPolicyHistory evaluate(CxThresholdPolicy policy, List<Job<?, ?>> jobs) throws IOException {
+        long start = System.currentTimeMillis();
+        CxPolicyHistory ret = new CxPolicyHistory();
+
+        final List<JobTask> tasks = new ArrayList<JobTask>(jobs.size());
+        for (Job<?, ?> job : jobs) {
+            BuildDir[] builds = listBuilds(job);
+            if (builds.length > 0) {
+                tasks.add(new JobTask(job.getFullName(), policy, CxBaseline.lookup(job), builds));
+            }
+        }
+        PoolHolder.POOL.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        for (JobTask task : tasks) {
+            ret.add(task);
+        }
+        ret.millis = System.currentTimeMillis() - start;
+        return ret;
+    }
+
+    private void add(JobTask task) {
+        int failing = 0;
+        int errors = 0;
+        List<Failure> failures = new ArrayList<Failure>();
+        for (int i = task.builds.length - 1; i >= 0; i--) {
+            CxThresholdPolicy.Violation v = task.violations[i];
+            if (task.errors[i]) {
+                errors++;
+            } else if (v != null) {
+                failing++;
+                if (failures.size() < MAX_LISTED_FAILURES) {
+                    failures.add(new Failure(task.builds[i].number, v));
+                }
+                RuleSummary rule = rules.get(v.getLine());
+                if (rule == null) {
+                    rule = new RuleSummary(v.getLine(), v.getRule());
+                    rules.put(v.getLine(), rule);
+                }
+                rule.failing++;
+            }
+        }
+        jobs.add(new JobSummary(task.job, task.builds.length, failing, errors, Collections.unmodifiableList(failures)));
+    }
+
+    /**
+     * Lists the builds of the job that have stored results, oldest first. Build directories are numbered, or in
+     * older layouts have numbered symbolic links next to them.
+     */
+    static BuildDir[] listBuilds(Job<?, ?> job) {
+        File[] entries = job.getBuildDir().listFiles();
+        if (entries == null) {
+            return new BuildDir[0];
+        }
+        List<BuildDir> ret = new ArrayList<BuildDir>();
+        for (File entry : entries) {
+            int number;
+            try {
+                number = Integer.parseInt(entry.getName());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            File dir = new File(entry, "checkmarx");
+            if (new File(dir, CxScanBuilder.SCAN_REPORT_XML).isFile() || new File(dir, CxScanBuilder.OSA_VULNERABILITIES_JSON).isFile()) {
+                ret.add(new BuildDir(number, dir));
+            }
+        }
+        BuildDir[] builds = ret.toArray(new BuildDir[ret.size()]);
+        Arrays.sort(builds, new Comparator<BuildDir>() {
+            @Override
+            public int compare(BuildDir a, BuildDir b) {
+                return a.number < b.number ? -1 : a.number == b.number ? 0 : 1;
+            }
+        });
+        return builds;
+    }
+
+    /**
+     * Evaluates all builds of one job; outcomes are stored per build.
+     */
+    private static final class JobTask extends RecursiveAction {
+        final String job;
+        final CxThresholdPolicy policy;
+        final CxBaseline.Lookup baseline;
+        final BuildDir[] builds;
+        final CxThresholdPolicy.Violation[] violations;
+        final boolean[] errors;
+
+        JobTask(String job, CxThresholdPolicy policy, CxBaseline.Lookup baseline, BuildDir[] builds) {
+            this.job = job;
+            this.policy = policy;
+            this.baseline = baseline;
+            this.builds = builds;
+            this.violations = new CxThresholdPolicy.Violation[builds.length];
+            this.errors = new boolean[builds.length];
+        }
+
+        @Override
+        protected void compute() {
+            new SliceTask(this, 0, builds.length).invoke();
+        }
+    }
+
+    private static final class SliceTask extends RecursiveAction {
+        private final JobTask job;
+        private final int from;
+        private final int to;
+
+        SliceTask(JobTask job, int from, int to) {
+            this.job = job;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SLICE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SliceTask(job, from, mid), new SliceTask(job, mid, to));
+                return;
+            }
+
+            CxThresholdPolicy policy = job.policy;
+            CxThresholdPolicy.Results previous = null;
+            if (from > 0 && policy.needsPrevious()) {
+                previous = load(from - 1);
+            }
+            for (int i = from; i < to; i++) {
+                CxThresholdPolicy.Results current = load(i);
+                if (current == null) {
+                    job.errors[i] = true;
+                } else {
+                    job.violations[i] = policy.evaluate(current, previous, job.baseline, reportTime(job.builds[i]));
+                }
+                previous = policy.needsPrevious() ? current : null;
+            }
+        }
+
+        private CxThresholdPolicy.Results load(int i) {
+            try {
+                return job.policy.loadResults(job.builds[i].checkmarxDir, false);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Failed to read the results of " + job.job + " #" + job.builds[i].number, e);
+                return null;
+            }
+        }
+
+        /**
+         * Library ages are taken as of the scan, which stored its report at the end of the build.
+         */
+        private static long reportTime(BuildDir build) {
+            File xml = new File(build.checkmarxDir, CxScanBuilder.SCAN_REPORT_XML);
+            long time = xml.lastModified();
+            if (time == 0) {
+                time = new File(build.checkmarxDir, CxScanBuilder.OSA_VULNERABILITIES_JSON).lastModified();
+            }
+            return time;
+        }
+    }
+}
@@ -9,6 +9,8 @@ import jenkins.model.Jenkins;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartRenderingInfo;
+import org.jfree.chart.ChartUtilities;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.CategoryAxis;
 import org.jfree.chart.axis.CategoryLabelPositions;
@@ -21,7 +23,11 @@ import org.jfree.ui.RectangleInsets;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
+import javax.imageio.ImageIO;
+import javax.servlet.http.HttpServletResponse;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.*;
 import java.util.List;
@@ -32,6 +38,8 @@ import java.util.List;
  */
 public class CxProjectResult implements Action {
 
+    private static final int MAX_CHART_DIMENSION = 2000;
+
     private AbstractProject owner;
 
     public CxProjectResult(AbstractProject owner) {
@@ -131,6 +139,9 @@ public class CxProjectResult implements Action {
 
     /**
      * Generates a PNG image for the test result trend.
+     * <p>
+     * Rendered images are kept in {@link CxTrendChartCache}, keyed by the last build with results, the version of
+     * the charted data and the requested size, and are served with a strong ETag.
      */
     public void doGraph(StaplerRequest req, StaplerResponse rsp) throws IOException {
         if (ChartUtil.awtProblemCause != null) {
@@ -139,23 +150,94 @@ public class CxProjectResult implements Action {
             return;
         }
 
-        CxScanResult cxScanResult = getLastSynchronousBuildAction();
-        if (cxScanResult != null && req.checkIfModified(cxScanResult.owner.getTimestamp(), rsp)) {
+        Area size = resolveSize(req);
+        String entryName = CxTrendChartCache.entryName(getLastResultBuildNumber(), CxTrendChartCache.get().dataVersion(owner), size.width, size.height, "png");
+        String etag = CxTrendChartCache.etag(owner, entryName);
+        if (isNotModified(req, rsp, etag)) {
             return;
         }
 
-        ChartUtil.generateGraph(req, rsp, createChart(req, buildDataSet(req)), calcDefaultSize());
+        CxFlightRecorder.Event event = CxFlightRecorder.TREND_GRAPH.begin();
+        CxTrendChartCache cache = CxTrendChartCache.get();
+        byte[] png = cache.lookup(owner, entryName);
+        boolean cached = png != null;
+        if (png == null) {
+            BufferedImage image = createChart(req, buildDataSet(req)).createBufferedImage(size.width, size.height);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, "PNG", out);
+            png = out.toByteArray();
+            cache.store(owner, entryName, png);
+        }
+        event.set(0, owner.getFullName()).set(1, (long) png.length).set(2, cached).commit();
+
+        rsp.setContentType("image/png");
+        rsp.setHeader("ETag", etag);
+        rsp.setContentLength(png.length);
+        rsp.getOutputStream().write(png);
     }
 
     /**
      * Generates a clickable map HTML for {@link #doGraph(StaplerRequest, StaplerResponse)}.
      */
     public void doGraphMap(StaplerRequest req, StaplerResponse rsp) throws IOException {
-        CxScanResult cxScanResult = getLastSynchronousBuildAction();
-        if (cxScanResult != null && req.checkIfModified(cxScanResult.owner.getTimestamp(), rsp)) {
+        Area size = resolveSize(req);
+        // the map embeds links relative to the "rel" parameter, so it is part of the key
+        String variant = "map-" + Integer.toHexString(getRelPath(req).hashCode());
+        String entryName = CxTrendChartCache.entryName(getLastResultBuildNumber(), CxTrendChartCache.get().dataVersion(owner), size.width, size.height, variant);
+        String etag = CxTrendChartCache.etag(owner, entryName);
+        if (isNotModified(req, rsp, etag)) {
             return;
         }
-        ChartUtil.generateClickableMap(req, rsp, createChart(req, buildDataSet(req)), calcDefaultSize());
+
+        CxTrendChartCache cache = CxTrendChartCache.get();
+        byte[] map = cache.lookup(owner, entryName);
+        if (map == null) {
+            ChartRenderingInfo info = new ChartRenderingInfo();
+            createChart(req, buildDataSet(req)).createBufferedImage(size.width, size.height, info);
+            map = ChartUtilities.getImageMap("map", info).getBytes("UTF-8");
+            cache.store(owner, entryName, map);
+        }
+
+        rsp.setContentType("text/plain;charset=UTF-8");
+        rsp.setHeader("ETag", etag);
+        rsp.setContentLength(map.length);
+        rsp.getOutputStream().write(map);
+    }
+
+    private int getLastResultBuildNumber() {
+        CxScanResult cxScanResult = getLastSynchronousBuildAction();
+        return cxScanResult != null ? cxScanResult.owner.getNumber() : 0;
+    }
+
+    private boolean isNotModified(StaplerRequest req, StaplerResponse rsp, String etag) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null && ifNoneMatch.contains(etag)) {
+            rsp.setHeader("ETag", etag);
+            rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Resolves the requested chart size, falling back to {@link #calcDefaultSize()} like {@link ChartUtil} does.
+     */
+    private Area resolveSize(StaplerRequest req) {
+        Area defaultSize = calcDefaultSize();
+        return new Area(parseDimension(req.getParameter("width"), defaultSize.width),
+                parseDimension(req.getParameter("height"), defaultSize.height));
+    }
+
+    private int parseDimension(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            return parsed > 0 && parsed <= MAX_CHART_DIMENSION ? parsed : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
 
     /**
@@ -0,0 +1,220 @@
+package com.checkmarx.jenkins;
+
+import org.apache.commons.io.IOUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves report files stored in the build directory straight from disk, without reading them into memory.
+ * Supports conditional requests (ETag / Last-Modified) and single byte ranges so large reports can be
+ * resumed and paged by the browser.
+ */
+final class CxReportFileServer {
+
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    private CxReportFileServer() {
+        // Hides default constructor
+    }
+
+    /**
+     * Streams the given file with validators and, when the client accepts it, a pre-compressed gzip variant
+     * that is created next to the file on first use. Uncompressed responses honor single byte ranges.
+     */
+    static void serve(StaplerRequest req, StaplerResponse rsp, File file, String contentType, boolean compressible) throws IOException {
+        if (!file.isFile()) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        File body = file;
+        boolean gzip = compressible && acceptsGzip(req);
+        if (gzip) {
+            body = gzipVariant(file);
+        }
+
+        String etag = etag(body);
+        long lastModified = body.lastModified();
+        rsp.setHeader("ETag", etag);
+        rsp.setDateHeader("Last-Modified", lastModified);
+        rsp.setHeader("Cache-Control", "private, max-age=0, must-revalidate");
+        if (compressible) {
+            rsp.setHeader("Vary", "Accept-Encoding");
+        }
+        if (!gzip) {
+            rsp.setHeader("Accept-Ranges", "bytes");
+        }
+
+        if (isNotModified(req, etag, lastModified)) {
+            rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        rsp.setContentType(contentType);
+        if (gzip) {
+            rsp.setHeader("Content-Encoding", "gzip");
+        }
+
+        long length = body.length();
+        long[] range = gzip ? null : requestedRange(req, etag, lastModified, length);
+        if (range == UNSATISFIABLE) {
+            rsp.setHeader("Content-Range", "bytes */" + length);
+            rsp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        if (range != null) {
+            rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            rsp.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+            rsp.setHeader("Content-Length", Long.toString(range[1] - range[0] + 1));
+            transfer(body, range[0], range[1] - range[0] + 1, rsp.getOutputStream());
+            return;
+        }
+
+        rsp.setHeader("Content-Length", Long.toString(length));
+        transfer(body, 0, length, rsp.getOutputStream());
+    }
+
+    private static boolean isNotModified(StaplerRequest req, String etag, long lastModified) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*");
+        }
+        long ifModifiedSince = dateHeader(req, "If-Modified-Since");
+        // HTTP dates have a one second resolution
+        return ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * Returns the date of the header, or -1 if it is missing or malformed; a malformed validator is ignored.
+     */
+    private static long dateHeader(StaplerRequest req, String name) {
+        try {
+            return req.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses a single "bytes" range. Returns null when the whole file should be sent (no range, multiple
+     * ranges, or a stale If-Range validator) and {@link #UNSATISFIABLE} when the range is out of bounds.
+     */
+    private static long[] requestedRange(StaplerRequest req, String etag, long lastModified, long length) {
+        String header = req.getHeader("Range");
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange != null && !ifRange.equals(etag)) {
+            String validator = ifRange.trim();
+            if (validator.startsWith("\"") || validator.startsWith("W/")) {
+                // an entity tag of another version of the file
+                return null;
+            }
+            long ifRangeDate = dateHeader(req, "If-Range");
+            if (ifRangeDate == -1 || lastModified / 1000 > ifRangeDate / 1000) {
+                return null;
+            }
+        }
+
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                // suffix range: the last N bytes
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                String endPart = spec.substring(dash + 1);
+                end = endPart.isEmpty() ? length - 1 : Math.min(Long.parseLong(endPart), length - 1);
+            }
+            if (start >= length || start > end) {
+                return UNSATISFIABLE;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static String etag(File file) {
+        return "\"" + Long.toHexString(file.length()) + "-" + Long.toHexString(file.lastModified()) + "\"";
+    }
+
+    static void transfer(File file, long position, long count, OutputStream out) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            WritableByteChannel target = Channels.newChannel(out);
+            long end = position + count;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            out.flush();
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private static boolean acceptsGzip(StaplerRequest req) {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.contains("gzip");
+    }
+
+    private static File gzipVariant(File file) throws IOException {
+        File gz = new File(file.getParentFile(), file.getName() + GZIP_SUFFIX);
+        if (gz.isFile() && gz.lastModified() >= file.lastModified()) {
+            return gz;
+        }
+
+        synchronized (CxReportFileServer.class) {
+            if (gz.isFile() && gz.lastModified() >= file.lastModified()) {
+                return gz;
+            }
+            File tmp = new File(gz.getParentFile(), gz.getName() + ".tmp");
+            FileInputStream in = new FileInputStream(file);
+            GZIPOutputStream out = null;
+            try {
+                out = new GZIPOutputStream(new FileOutputStream(tmp));
+                IOUtils.copy(in, out);
+            } finally {
+                IOUtils.closeQuietly(in);
+                IOUtils.closeQuietly(out);
+            }
+            if (!tmp.renameTo(gz)) {
+                gz.delete();
+                if (!tmp.renameTo(gz)) {
+                    throw new IOException("Failed to create " + gz);
+                }
+            }
+            return gz;
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package com.checkmarx.jenkins;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Paginated JSON view over a {@link CxResultsIndex}, served under a build's {@code checkmarx/results} URL.
+ * <p>
+ * Filters are resolved once per request against the small query and string dictionaries, so matching a
+ * row costs a few array lookups. The cursor is the row offset to continue from.
+ */
+final class CxResultsApi {
+
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+
+    private CxResultsApi() {
+        // Hides default constructor
+    }
+
+    /**
+     * Row filter resolved against the dictionaries of one index.
+     */
+    static final class Filter {
+        private final CxResultsIndex index;
+        private final boolean[] severities;
+        private final boolean[] queries;
+        private final boolean[] files;
+        private final int status;
+        private final Boolean falsePositive;
+        private final CxBaseline.Lookup baseline;
+        private final Boolean suppressed;
+
+        /**
+         * @throws IllegalArgumentException if a filter parameter has an unknown value
+         */
+        Filter(CxResultsIndex index, CxBaseline.Lookup baseline, StaplerRequest req) {
+            this.index = index;
+            this.baseline = baseline;
+            this.severities = resolveSeverities(req.getParameter("severity"));
+            this.queries = resolveQueries(index, req.getParameter("query"), req.getParameter("group"));
+            this.files = resolveFiles(index, req.getParameter("file"));
+            this.status = resolveStatus(index, req.getParameter("status"));
+            String fp = req.getParameter("falsePositive");
+            this.falsePositive = StringUtils.isBlank(fp) ? null : Boolean.valueOf(fp);
+            String sup = req.getParameter("suppressed");
+            this.suppressed = StringUtils.isBlank(sup) ? null : Boolean.valueOf(sup);
+        }
+
+        boolean matches(int row) {
+            if (severities != null && !severities[index.severity[row]]) {
+                return false;
+            }
+            if (queries != null && !queries[index.query[row]]) {
+                return false;
+            }
+            if (files != null && (index.file[row] < 0 || !files[index.file[row]])) {
+                return false;
+            }
+            if (status != Integer.MIN_VALUE && index.status[row] != status) {
+                return false;
+            }
+            if (falsePositive != null && falsePositive != index.isFalsePositive(row)) {
+                return false;
+            }
+            return suppressed == null || suppressed == baseline.isSuppressed(index.fingerprint[row]);
+        }
+
+        private static boolean[] resolveSeverities(String param) {
+            if (StringUtils.isBlank(param)) {
+                return null;
+            }
+            boolean[] ret = new boolean[CxResultSeverity.values().length];
+            for (String s : param.split(",")) {
+                CxResultSeverity severity = findSeverity(s.trim());
+                if (severity == null) {
+                    throw new IllegalArgumentException("Unknown severity: " + s.trim());
+                }
+                ret[severity.ordinal()] = true;
+            }
+            return ret;
+        }
+
+        private static CxResultSeverity findSeverity(String name) {
+            for (CxResultSeverity s : CxResultSeverity.values()) {
+                // as in the report, "Information" is Info
+                if (name.regionMatches(true, 0, s.toString(), 0, s.toString().length())) {
+                    return s;
+                }
+            }
+            return null;
+        }
+
+        private static boolean[] resolveQueries(CxResultsIndex index, String name, String group) {
+            if (StringUtils.isBlank(name) && StringUtils.isBlank(group)) {
+                return null;
+            }
+            boolean[] ret = new boolean[index.queryCount()];
+            for (int q = 0; q < ret.length; q++) {
+                ret[q] = (StringUtils.isBlank(name) || name.equalsIgnoreCase(index.getString(index.queryName[q])))
+                        && (StringUtils.isBlank(group) || group.equalsIgnoreCase(index.getString(index.queryGroup[q])));
+            }
+            return ret;
+        }
+
+        private static boolean[] resolveFiles(CxResultsIndex index, String fragment) {
+            if (StringUtils.isBlank(fragment)) {
+                return null;
+            }
+            String needle = fragment.toLowerCase();
+            boolean[] ret = new boolean[index.strings.length];
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = index.strings[i].toLowerCase().contains(needle);
+            }
+            return ret;
+        }
+
+        /**
+         * Statuses share the string dictionary with file names, so only ids found in the status column are
+         * candidates.
+         */
+        private static int resolveStatus(CxResultsIndex index, String param) {
+            if (StringUtils.isBlank(param)) {
+                return Integer.MIN_VALUE;
+            }
+            boolean[] checked = new boolean[index.strings.length];
+            for (int row = 0; row < index.size(); row++) {
+                int id = index.status[row];
+                if (id >= 0 && !checked[id]) {
+                    checked[id] = true;
+                    if (param.equalsIgnoreCase(index.strings[id])) {
+                        return id;
+                    }
+                }
+            }
+            // unknown status, nothing matches
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Resolves the filter of the request, or answers 400 and returns null if a parameter is invalid.
+     */
+    private static Filter resolveFilter(CxResultsIndex index, CxBaseline.Lookup baseline, StaplerRequest req,
+                                        StaplerResponse rsp) throws IOException {
+        try {
+            return new Filter(index, baseline, req);
+        } catch (IllegalArgumentException e) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return null;
+        }
+    }
+
+    static void writeResults(CxResultsIndex index, CxBaseline.Lookup baseline, StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Filter filter = resolveFilter(index, baseline, req, rsp);
+        if (filter == null) {
+            return;
+        }
+        int cursor = Math.max(0, parseInt(req.getParameter("cursor"), 0));
+        int limit = Math.min(MAX_PAGE_SIZE, Math.max(1, parseInt(req.getParameter("limit"), DEFAULT_PAGE_SIZE)));
+
+        JsonGenerator json = startJson(rsp);
+        json.writeStartObject();
+        json.writeNumberField("total", countMatches(index, filter));
+        json.writeArrayFieldStart("results");
+        int row = cursor;
+        int written = 0;
+        for (; row < index.size() && written < limit; row++) {
+            if (filter.matches(row)) {
+                writeRow(json, index, row, baseline);
+                written++;
+            }
+        }
+        json.writeEndArray();
+
+        // look ahead, so the last page does not advertise an empty next page
+        while (row < index.size() && !filter.matches(row)) {
+            row++;
+        }
+        if (row < index.size()) {
+            json.writeStringField("nextCursor", Integer.toString(row));
+        } else {
+            json.writeNullField("nextCursor");
+        }
+        json.writeEndObject();
+        json.close();
+    }
+
+    static void writeGroups(CxResultsIndex index, CxBaseline.Lookup baseline, StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Filter filter = resolveFilter(index, baseline, req, rsp);
+        if (filter == null) {
+            return;
+        }
+        String by = StringUtils.defaultIfEmpty(req.getParameter("by"), "query");
+        int limit = Math.max(1, parseInt(req.getParameter("limit"), Integer.MAX_VALUE));
+
+        final int[] counts;
+        if ("severity".equals(by)) {
+            counts = new int[CxResultSeverity.values().length];
+        } else if ("file".equals(by)) {
+            counts = new int[index.strings.length];
+        } else {
+            by = "query";
+            counts = new int[index.queryCount()];
+        }
+
+        for (int row = 0; row < index.size(); row++) {
+            if (filter.matches(row)) {
+                if ("severity".equals(by)) {
+                    counts[index.severity[row]]++;
+                } else if ("file".equals(by)) {
+                    if (index.file[row] >= 0) {
+                        counts[index.file[row]]++;
+                    }
+                } else {
+                    counts[index.query[row]]++;
+                }
+            }
+        }
+
+        Integer[] keys = new Integer[counts.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i;
+        }
+        if (!"severity".equals(by)) {
+            Arrays.sort(keys, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return counts[b] - counts[a];
+                }
+            });
+        }
+
+        JsonGenerator json = startJson(rsp);
+        json.writeStartObject();
+        json.writeStringField("by", by);
+        json.writeArrayFieldStart("groups");
+        int written = 0;
+        for (Integer key : keys) {
+            if (counts[key] == 0 || written >= limit) {
+                continue;
+            }
+            json.writeStartObject();
+            if ("severity".equals(by)) {
+                json.writeStringField("severity", CxResultSeverity.values()[key].toString());
+            } else if ("file".equals(by)) {
+                json.writeStringField("file", index.strings[key]);
+            } else {
+                json.writeStringField("query", index.getString(index.queryName[key]));
+                json.writeStringField("group", index.getString(index.queryGroup[key]));
+                json.writeStringField("severity", CxResultSeverity.values()[index.querySeverity[key]].toString());
+                json.writeNumberField("cweId", index.queryCweId[key]);
+            }
+            json.writeNumberField("count", counts[key]);
+            json.writeEndObject();
+            written++;
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.close();
+    }
+
+    /**
+     * Writes the summary of a build diff and one page of its new or fixed findings ({@code section}).
+     * New findings are rows of the target index, fixed findings rows of the base index.
+     */
+    static void writeDiff(CxResultsDiff diff, CxResultsIndex target, CxResultsIndex base, CxBaseline.Lookup baseline,
+                          StaplerRequest req, StaplerResponse rsp) throws IOException {
+        boolean fixed = "fixed".equals(req.getParameter("section"));
+        CxResultsIndex index = fixed ? base : target;
+        int[] rows = fixed ? diff.getFixedRows() : diff.getNewRows();
+        int cursor = Math.max(0, parseInt(req.getParameter("cursor"), 0));
+        int limit = Math.min(MAX_PAGE_SIZE, Math.max(1, parseInt(req.getParameter("limit"), DEFAULT_PAGE_SIZE)));
+        Filter filter = null;
+        if (index != null) {
+            filter = resolveFilter(index, baseline, req, rsp);
+            if (filter == null) {
+                return;
+            }
+        }
+
+        JsonGenerator json = startJson(rsp);
+        json.writeStartObject();
+        json.writeNumberField("base", diff.getBaseNumber());
+        json.writeObjectFieldStart("sast");
+        json.writeNumberField("new", diff.getNewRows().length);
+        json.writeNumberField("fixed", diff.getFixedRows().length);
+        json.writeNumberField("recurring", diff.getRecurringCount());
+        json.writeEndObject();
+        json.writeObjectFieldStart("osa");
+        writeVulnerabilities(json, "appeared", diff.getAppearedVulnerabilities());
+        writeVulnerabilities(json, "disappeared", diff.getDisappearedVulnerabilities());
+        json.writeEndObject();
+
+        json.writeStringField("section", fixed ? "fixed" : "new");
+        json.writeArrayFieldStart("results");
+        int i = cursor;
+        if (filter != null) {
+            int written = 0;
+            for (; i < rows.length && written < limit; i++) {
+                if (filter.matches(rows[i])) {
+                    writeRow(json, index, rows[i], baseline);
+                    written++;
+                }
+            }
+            while (i < rows.length && !filter.matches(rows[i])) {
+                i++;
+            }
+        }
+        json.writeEndArray();
+        if (index != null && i < rows.length) {
+            json.writeStringField("nextCursor", Integer.toString(i));
+        } else {
+            json.writeNullField("nextCursor");
+        }
+        json.writeEndObject();
+        json.close();
+    }
+
+    private static void writeVulnerabilities(JsonGenerator json, String field, List<CxResultsDiff.OsaVulnerability> vulnerabilities) throws IOException {
+        json.writeArrayFieldStart(field);
+        for (CxResultsDiff.OsaVulnerability v : vulnerabilities) {
+            json.writeStartObject();
+            json.writeStringField("cveName", v.getCveName());
+            json.writeStringField("libraryId", v.getLibraryId());
+            json.writeStringField("severity", v.getSeverity());
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+    }
+
+    static JsonGenerator startJson(StaplerResponse rsp) throws IOException {
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.setHeader("Cache-Control", "private, no-cache");
+        return CxJson.MAPPER.getFactory().createGenerator(rsp.getWriter());
+    }
+
+    private static int countMatches(CxResultsIndex index, Filter filter) {
+        int count = 0;
+        for (int row = 0; row < index.size(); row++) {
+            if (filter.matches(row)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void writeRow(JsonGenerator json, CxResultsIndex index, int row, CxBaseline.Lookup baseline) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("id", row);
+        json.writeStringField("severity", index.getSeverity(row).toString());
+        json.writeStringField("query", index.getQueryName(row));
+        json.writeStringField("group", index.getQueryGroup(row));
+        json.writeNumberField("cweId", index.getCweId(row));
+        json.writeStringField("file", index.getFileName(row));
+        json.writeNumberField("line", index.getLine(row));
+        json.writeNumberField("column", index.getColumn(row));
+        json.writeStringField("status", index.getStatus(row));
+        json.writeBooleanField("falsePositive", index.isFalsePositive(row));
+        CxBaseline.Record suppression = baseline.get(index.getFingerprint(row));
+        if (suppression != null) {
+            json.writeObjectFieldStart("suppression");
+            json.writeStringField("reason", suppression.getReason().name());
+            json.writeStringField("author", suppression.getAuthor());
+            json.writeStringField("comment", suppression.getComment());
+            json.writeNumberField("created", suppression.getCreated());
+            json.writeEndObject();
+        }
+        json.writeNumberField("similarityId", index.getSimilarityId(row));
+        json.writeStringField("fingerprint", Long.toHexString(index.getFingerprint(row)));
+        json.writeStringField("deepLink", index.getDeepLink(row));
+        json.writeEndObject();
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
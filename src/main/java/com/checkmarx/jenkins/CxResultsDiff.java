@@ -0,0 +1,318 @@
+package com.checkmarx.jenkins;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Findings diff between two builds: SAST results that are new, fixed or recurring, matched by
+ * {@link CxResultsIndex#getFingerprint fingerprint}, and OSA vulnerabilities that appeared or disappeared.
+ * <p>
+ * SAST results are matched with a hash join over the two indexes. Duplicate fingerprints are matched
+ * one to one, so a finding reported twice where it used to be reported once counts as one new finding.
+ * The outcome is stored in the target build's checkmarx directory per base build, and is recomputed only
+ * when one of the underlying reports changes.
+ */
+public final class CxResultsDiff {
+
+    static final String DIFF_DIR = "diff";
+
+    private static final int MAGIC = 0x43584446; // "CXDF"
+    private static final int VERSION = 1;
+
+    private final int baseNumber;
+    private final int[] newRows;
+    private final int[] fixedRows;
+    private final int recurring;
+    private final List<OsaVulnerability> appeared;
+    private final List<OsaVulnerability> disappeared;
+
+    private CxResultsDiff(int baseNumber, int[] newRows, int[] fixedRows, int recurring,
+                          List<OsaVulnerability> appeared, List<OsaVulnerability> disappeared) {
+        this.baseNumber = baseNumber;
+        this.newRows = newRows;
+        this.fixedRows = fixedRows;
+        this.recurring = recurring;
+        this.appeared = appeared;
+        this.disappeared = disappeared;
+    }
+
+    /**
+     * OSA vulnerability identity: a CVE reported against a library.
+     */
+    public static final class OsaVulnerability {
+        private final String cveName;
+        private final String libraryId;
+        private final String severity;
+
+        OsaVulnerability(String cveName, String libraryId, String severity) {
+            this.cveName = cveName;
+            this.libraryId = libraryId;
+            this.severity = severity;
+        }
+
+        public String getCveName() {
+            return cveName;
+        }
+
+        public String getLibraryId() {
+            return libraryId;
+        }
+
+        public String getSeverity() {
+            return severity;
+        }
+
+        String key() {
+            return cveName + '\u0000' + libraryId;
+        }
+    }
+
+    public int getBaseNumber() {
+        return baseNumber;
+    }
+
+    /**
+     * Rows of the target build's index that have no match in the base build.
+     */
+    public int[] getNewRows() {
+        return newRows;
+    }
+
+    /**
+     * Rows of the base build's index that have no match in the target build.
+     */
+    public int[] getFixedRows() {
+        return fixedRows;
+    }
+
+    public int getRecurringCount() {
+        return recurring;
+    }
+
+    public List<OsaVulnerability> getAppearedVulnerabilities() {
+        return appeared;
+    }
+
+    public List<OsaVulnerability> getDisappearedVulnerabilities() {
+        return disappeared;
+    }
+
+    /**
+     * Returns the diff of the target build against the base build, from the on-disk cache when it is
+     * still current. Either build may lack SAST or OSA results; the missing side then counts as empty.
+     */
+    public static CxResultsDiff load(File targetDir, File baseDir, int baseNumber) throws IOException {
+        CxResultsIndex target = CxResultsIndex.load(targetDir);
+        CxResultsIndex base = CxResultsIndex.load(baseDir);
+        File targetOsa = new File(targetDir, CxScanBuilder.OSA_VULNERABILITIES_JSON);
+        File baseOsa = new File(baseDir, CxScanBuilder.OSA_VULNERABILITIES_JSON);
+
+        long[] stamps = {
+                new File(targetDir, CxResultsIndex.INDEX_FILE_NAME).lastModified(),
+                new File(baseDir, CxResultsIndex.INDEX_FILE_NAME).lastModified(),
+                targetOsa.lastModified(),
+                baseOsa.lastModified()
+        };
+
+        File cacheFile = new File(new File(targetDir, DIFF_DIR), baseNumber + ".bin");
+        CxResultsDiff cached = read(cacheFile, baseNumber, stamps);
+        if (cached != null) {
+            return cached;
+        }
+
+        int[][] sast = joinSast(target, base);
+        Map<String, OsaVulnerability> targetCves = readOsaVulnerabilities(targetOsa);
+        Map<String, OsaVulnerability> baseCves = readOsaVulnerabilities(baseOsa);
+        CxResultsDiff diff = new CxResultsDiff(baseNumber, sast[0], sast[1], sast[2][0],
+                missingFrom(targetCves, baseCves), missingFrom(baseCves, targetCves));
+        diff.write(cacheFile, stamps);
+        return diff;
+    }
+
+    /**
+     * Returns {new rows, fixed rows, {recurring count}}.
+     */
+    private static int[][] joinSast(CxResultsIndex target, CxResultsIndex base) {
+        int targetSize = target == null ? 0 : target.size();
+        int baseSize = base == null ? 0 : base.size();
+
+        CxFingerprintMap baseCounts = countFingerprints(base);
+        int[] newRows = new int[targetSize];
+        int newCount = 0;
+        int recurring = 0;
+        for (int row = 0; row < targetSize; row++) {
+            long fp = target.getFingerprint(row);
+            if (baseCounts.get(fp, 0) > 0) {
+                baseCounts.add(fp, -1);
+                recurring++;
+            } else {
+                newRows[newCount++] = row;
+            }
+        }
+
+        CxFingerprintMap targetCounts = countFingerprints(target);
+        int[] fixedRows = new int[baseSize];
+        int fixedCount = 0;
+        for (int row = 0; row < baseSize; row++) {
+            long fp = base.getFingerprint(row);
+            if (targetCounts.get(fp, 0) > 0) {
+                targetCounts.add(fp, -1);
+            } else {
+                fixedRows[fixedCount++] = row;
+            }
+        }
+
+        return new int[][]{Arrays.copyOf(newRows, newCount), Arrays.copyOf(fixedRows, fixedCount), {recurring}};
+    }
+
+    private static CxFingerprintMap countFingerprints(CxResultsIndex index) {
+        int size = index == null ? 0 : index.size();
+        CxFingerprintMap counts = new CxFingerprintMap(size);
+        for (int row = 0; row < size; row++) {
+            counts.add(index.getFingerprint(row), 1);
+        }
+        return counts;
+    }
+
+    private static List<OsaVulnerability> missingFrom(Map<String, OsaVulnerability> from, Map<String, OsaVulnerability> other) {
+        List<OsaVulnerability> ret = new ArrayList<OsaVulnerability>();
+        for (Map.Entry<String, OsaVulnerability> e : from.entrySet()) {
+            if (!other.containsKey(e.getKey())) {
+                ret.add(e.getValue());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Streams the stored OSA vulnerabilities report, keeping only the identity of every entry.
+     */
+    private static Map<String, OsaVulnerability> readOsaVulnerabilities(File json) throws IOException {
+        Map<String, OsaVulnerability> ret = new LinkedHashMap<String, OsaVulnerability>();
+        if (!json.isFile()) {
+            return ret;
+        }
+        JsonParser parser = CxJson.MAPPER.getFactory().createParser(json);
+        try {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return ret;
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                JsonNode node = parser.readValueAsTree();
+                String cveName = node.path("cveName").asText(null);
+                if (cveName == null) {
+                    cveName = node.path("id").asText("");
+                }
+                JsonNode severity = node.path("severity");
+                OsaVulnerability vulnerability = new OsaVulnerability(cveName,
+                        node.path("libraryId").asText(""),
+                        severity.isObject() ? severity.path("name").asText("") : severity.asText(""));
+                ret.put(vulnerability.key(), vulnerability);
+            }
+        } finally {
+            IOUtils.closeQuietly(parser);
+        }
+        return ret;
+    }
+
+    private static CxResultsDiff read(File cacheFile, int baseNumber, long[] stamps) throws IOException {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            for (long stamp : stamps) {
+                if (in.readLong() != stamp) {
+                    return null;
+                }
+            }
+            int[] newRows = readInts(in);
+            int[] fixedRows = readInts(in);
+            int recurring = in.readInt();
+            return new CxResultsDiff(baseNumber, newRows, fixedRows, recurring, readVulnerabilities(in), readVulnerabilities(in));
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private void write(File cacheFile, long[] stamps) throws IOException {
+        File dir = cacheFile.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+        File tmp = new File(dir, cacheFile.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (long stamp : stamps) {
+                out.writeLong(stamp);
+            }
+            writeInts(out, newRows);
+            writeInts(out, fixedRows);
+            out.writeInt(recurring);
+            writeVulnerabilities(out, appeared);
+            writeVulnerabilities(out, disappeared);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+        if (!tmp.renameTo(cacheFile)) {
+            cacheFile.delete();
+            if (!tmp.renameTo(cacheFile)) {
+                throw new IOException("Failed to write " + cacheFile);
+            }
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] ret = new int[in.readInt()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = in.readInt();
+        }
+        return ret;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static List<OsaVulnerability> readVulnerabilities(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<OsaVulnerability> ret = new ArrayList<OsaVulnerability>(count);
+        for (int i = 0; i < count; i++) {
+            ret.add(new OsaVulnerability(in.readUTF(), in.readUTF(), in.readUTF()));
+        }
+        return ret;
+    }
+
+    private static void writeVulnerabilities(DataOutputStream out, List<OsaVulnerability> vulnerabilities) throws IOException {
+        out.writeInt(vulnerabilities.size());
+        for (OsaVulnerability v : vulnerabilities) {
+            out.writeUTF(v.cveName);
+            out.writeUTF(v.libraryId);
+            out.writeUTF(v.severity);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.checkmarx.jenkins;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compact, column oriented index of the SAST results stored in a build's {@code ScanReport.xml}.
+ * <p>
+ * The index is built once per build by {@link CxResultsIndexBuilder} with a streaming pass over the report
+ * and kept next to it. Rows are pre-sorted by severity, query and file, so paging through the results is a
+ * plain offset into the columns and no request ever needs to parse the XML document again.
+ */
+public final class CxResultsIndex {
+
+    public static final String INDEX_FILE_NAME = "ScanReport.idx";
+
+    static final int MAGIC = 0x43584958; // "CXIX"
+    static final int VERSION = 1;
+
+    static final int FLAG_FALSE_POSITIVE = 1;
+
+    private static final int MAX_LOADED_INDEXES = Integer.getInteger(CxResultsIndex.class.getName() + ".maxLoaded", 8);
+
+    private static final Map<String, CxResultsIndex> LOADED = new LinkedHashMap<String, CxResultsIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CxResultsIndex> eldest) {
+            return size() > MAX_LOADED_INDEXES;
+        }
+    };
+
+    /**
+     * Deep link of the scan in the Checkmarx web client; result links are derived by appending the path id.
+     */
+    final String scanDeepLink;
+    final String[] strings;
+
+    // queries
+    final int[] queryName;
+    final int[] queryGroup;
+    final int[] queryCweId;
+    final byte[] querySeverity;
+
+    // results
+    final int size;
+    final int[] query;
+    final int[] file;
+    final int[] line;
+    final int[] column;
+    final byte[] severity;
+    final int[] status;
+    final byte[] flags;
+    final int[] similarityId;
+    final long[] pathId;
+    final long[] fingerprint;
+
+    CxResultsIndex(String scanDeepLink, String[] strings,
+                   int[] queryName, int[] queryGroup, int[] queryCweId, byte[] querySeverity,
+                   int size, int[] query, int[] file, int[] line, int[] column, byte[] severity, int[] status,
+                   byte[] flags, int[] similarityId, long[] pathId, long[] fingerprint) {
+        this.scanDeepLink = scanDeepLink;
+        this.strings = strings;
+        this.queryName = queryName;
+        this.queryGroup = queryGroup;
+        this.queryCweId = queryCweId;
+        this.querySeverity = querySeverity;
+        this.size = size;
+        this.query = query;
+        this.file = file;
+        this.line = line;
+        this.column = column;
+        this.severity = severity;
+        this.status = status;
+        this.flags = flags;
+        this.similarityId = similarityId;
+        this.pathId = pathId;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Loads the index of the given checkmarx build directory, building it from {@code ScanReport.xml} first
+     * if needed. Returns null when the build has no stored SAST report.
+     */
+    public static CxResultsIndex load(File checkmarxBuildDir) throws IOException {
+        File indexFile = indexFile(checkmarxBuildDir);
+        if (indexFile == null) {
+            return null;
+        }
+
+        String key = indexFile.getAbsolutePath() + "@" + indexFile.lastModified();
+        synchronized (LOADED) {
+            CxResultsIndex cached = LOADED.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        CxResultsIndex index = read(indexFile);
+        synchronized (LOADED) {
+            LOADED.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Like {@link #load}, but bypasses the cache of loaded indexes, for one-off passes over many builds. Nothing
+     * is written to the build directory: a missing or outdated index is built in memory and dropped after use.
+     */
+    static CxResultsIndex loadUncached(File checkmarxBuildDir) throws IOException {
+        File indexFile = new File(checkmarxBuildDir, INDEX_FILE_NAME);
+        File xmlReport = new File(checkmarxBuildDir, CxScanBuilder.SCAN_REPORT_XML);
+        if (isCurrent(indexFile, xmlReport)) {
+            return read(indexFile);
+        }
+        return xmlReport.isFile() ? CxResultsIndexBuilder.parse(xmlReport) : null;
+    }
+
+    private static boolean isCurrent(File indexFile, File xmlReport) {
+        return indexFile.isFile() && indexFile.lastModified() >= xmlReport.lastModified();
+    }
+
+    /**
+     * Returns the current index file of the build, building it first if needed, or null without a SAST report.
+     */
+    private static File indexFile(File checkmarxBuildDir) throws IOException {
+        File indexFile = new File(checkmarxBuildDir, INDEX_FILE_NAME);
+        File xmlReport = new File(checkmarxBuildDir, CxScanBuilder.SCAN_REPORT_XML);
+        if (!isCurrent(indexFile, xmlReport)) {
+            if (!xmlReport.isFile()) {
+                return null;
+            }
+            CxResultsIndexBuilder.build(xmlReport, indexFile);
+        }
+        return indexFile;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int queryCount() {
+        return queryName.length;
+    }
+
+    public String getString(int idx) {
+        return idx < 0 ? null : strings[idx];
+    }
+
+    public String getQueryName(int row) {
+        return getString(queryName[query[row]]);
+    }
+
+    public String getQueryGroup(int row) {
+        return getString(queryGroup[query[row]]);
+    }
+
+    public int getCweId(int row) {
+        return queryCweId[query[row]];
+    }
+
+    public CxResultSeverity getSeverity(int row) {
+        return CxResultSeverity.values()[severity[row]];
+    }
+
+    public String getFileName(int row) {
+        return getString(file[row]);
+    }
+
+    public int getLine(int row) {
+        return line[row];
+    }
+
+    public int getColumn(int row) {
+        return column[row];
+    }
+
+    public String getStatus(int row) {
+        return getString(status[row]);
+    }
+
+    public boolean isFalsePositive(int row) {
+        return (flags[row] & FLAG_FALSE_POSITIVE) != 0;
+    }
+
+    public int getSimilarityId(int row) {
+        return similarityId[row];
+    }
+
+    public long getFingerprint(int row) {
+        return fingerprint[row];
+    }
+
+    public String getDeepLink(int row) {
+        if (scanDeepLink == null || scanDeepLink.isEmpty() || pathId[row] < 0) {
+            return null;
+        }
+        return scanDeepLink + "&pathid=" + pathId[row];
+    }
+
+    /**
+     * Stable 64 bit identity of a finding across builds: query, file and the server's similarity id.
+     */
+    static long fingerprint(String queryName, String fileName, int similarityId) {
+        long h = 0xcbf29ce484222325L;
+        h = fnv(h, queryName);
+        h = fnv(h, "\u0000");
+        h = fnv(h, fileName);
+        h ^= similarityId;
+        h *= 0x100000001b3L;
+        // final avalanche, so that nearby inputs spread over the whole hash space
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    private static long fnv(long h, String s) {
+        if (s == null) {
+            return h;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    void write(File indexFile) throws IOException {
+        File tmp = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(scanDeepLink == null ? "" : scanDeepLink);
+
+            out.writeInt(strings.length);
+            for (String s : strings) {
+                out.writeUTF(s);
+            }
+
+            out.writeInt(queryName.length);
+            for (int q = 0; q < queryName.length; q++) {
+                out.writeInt(queryName[q]);
+                out.writeInt(queryGroup[q]);
+                out.writeInt(queryCweId[q]);
+                out.writeByte(querySeverity[q]);
+            }
+
+            out.writeInt(size);
+            for (int r = 0; r < size; r++) {
+                out.writeInt(query[r]);
+                out.writeInt(file[r]);
+                out.writeInt(line[r]);
+                out.writeInt(column[r]);
+                out.writeByte(severity[r]);
+                out.writeInt(status[r]);
+                out.writeByte(flags[r]);
+                out.writeInt(similarityId[r]);
+                out.writeLong(pathId[r]);
+                out.writeLong(fingerprint[r]);
+            }
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+        if (!tmp.renameTo(indexFile)) {
+            indexFile.delete();
+            if (!tmp.renameTo(indexFile)) {
+                throw new IOException("Failed to write " + indexFile);
+            }
+        }
+    }
+
+    private static CxResultsIndex read(File indexFile) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 64 * 1024));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unsupported results index " + indexFile);
+            }
+            String scanDeepLink = in.readUTF();
+
+            String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readUTF();
+            }
+
+            int queryCount = in.readInt();
+            int[] queryName = new int[queryCount];
+            int[] queryGroup = new int[queryCount];
+            int[] queryCweId = new int[queryCount];
+            byte[] querySeverity = new byte[queryCount];
+            for (int q = 0; q < queryCount; q++) {
+                queryName[q] = in.readInt();
+                queryGroup[q] = in.readInt();
+                queryCweId[q] = in.readInt();
+                querySeverity[q] = in.readByte();
+            }
+
+            int size = in.readInt();
+            int[] query = new int[size];
+            int[] file = new int[size];
+            int[] line = new int[size];
+            int[] column = new int[size];
+            byte[] severity = new byte[size];
+            int[] status = new int[size];
+            byte[] flags = new byte[size];
+            int[] similarityId = new int[size];
+            long[] pathId = new long[size];
+            long[] fingerprint = new long[size];
+            for (int r = 0; r < size; r++) {
+                query[r] = in.readInt();
+                file[r] = in.readInt();
+                line[r] = in.readInt();
+                column[r] = in.readInt();
+                severity[r] = in.readByte();
+                status[r] = in.readInt();
+                flags[r] = in.readByte();
+                similarityId[r] = in.readInt();
+                pathId[r] = in.readLong();
+                fingerprint[r] = in.readLong();
+            }
+
+            return new CxResultsIndex(scanDeepLink, strings, queryName, queryGroup, queryCweId, querySeverity,
+                    size, query, file, line, column, severity, status, flags, similarityId, pathId, fingerprint);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.checkmarx.jenkins;
+
+import org.apache.commons.io.IOUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a {@link CxResultsIndex} with a single StAX pass over {@code ScanReport.xml}.
+ * Only the Query, Result and first Path element of every result are looked at; snippets and
+ * path nodes are skipped without being materialized.
+ */
+final class CxResultsIndexBuilder {
+
+    private static final int MAX_STRING_LENGTH = 16 * 1024;
+
+    private final List<String> strings = new ArrayList<String>();
+    private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+
+    private final IntList queryName = new IntList();
+    private final IntList queryGroup = new IntList();
+    private final IntList queryCweId = new IntList();
+    private final IntList querySeverity = new IntList();
+
+    private final IntList query = new IntList();
+    private final IntList file = new IntList();
+    private final IntList line = new IntList();
+    private final IntList column = new IntList();
+    private final IntList severity = new IntList();
+    private final IntList status = new IntList();
+    private final IntList flags = new IntList();
+    private final IntList similarityId = new IntList();
+    private final LongList pathId = new LongList();
+
+    private String scanDeepLink;
+
+    private CxResultsIndexBuilder() {
+    }
+
+    /**
+     * Builds of the same index file are serialized on one of these locks, picked by path, so that reports of
+     * different builds are parsed in parallel.
+     */
+    private static final Object[] LOCKS = new Object[64];
+
+    static {
+        for (int i = 0; i < LOCKS.length; i++) {
+            LOCKS[i] = new Object();
+        }
+    }
+
+    /**
+     * Parses the given XML report and writes its index to {@code indexFile}.
+     */
+    static CxResultsIndex build(File xmlReport, File indexFile) throws IOException {
+        synchronized (LOCKS[(indexFile.getAbsolutePath().hashCode() & 0x7fffffff) % LOCKS.length]) {
+            CxResultsIndex index = parse(xmlReport);
+            index.write(indexFile);
+            return index;
+        }
+    }
+
+    /**
+     * Parses the given XML report into an index kept in memory only.
+     */
+    static CxResultsIndex parse(File xmlReport) throws IOException {
+        CxResultsIndexBuilder builder = new CxResultsIndexBuilder();
+        InputStream in = new BufferedInputStream(new FileInputStream(xmlReport), 64 * 1024);
+        try {
+            builder.parse(in);
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to parse " + xmlReport + ": " + e.getMessage(), e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        return builder.toIndex();
+    }
+
+    private void parse(InputStream in) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XMLStreamReader reader = factory.createXMLStreamReader(in);
+        try {
+            int currentQuery = -1;
+            boolean pathSeen = true;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String element = reader.getLocalName();
+                if ("Result".equals(element) && currentQuery >= 0) {
+                    addResult(reader, currentQuery);
+                    pathSeen = false;
+                } else if ("Path".equals(element) && !pathSeen) {
+                    int last = query.size() - 1;
+                    similarityId.set(last, parseInt(reader.getAttributeValue(null, "SimilarityId"), 0));
+                    pathId.set(last, parseLong(reader.getAttributeValue(null, "PathId"), -1));
+                    pathSeen = true;
+                } else if ("Query".equals(element)) {
+                    currentQuery = addQuery(reader);
+                } else if ("CxXMLResults".equals(element)) {
+                    scanDeepLink = reader.getAttributeValue(null, "DeepLink");
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private int addQuery(XMLStreamReader reader) {
+        queryName.add(intern(reader.getAttributeValue(null, "name")));
+        queryGroup.add(intern(reader.getAttributeValue(null, "group")));
+        queryCweId.add(parseInt(reader.getAttributeValue(null, "cweId"), 0));
+        querySeverity.add(parseSeverity(reader.getAttributeValue(null, "Severity")).ordinal());
+        return queryName.size() - 1;
+    }
+
+    private void addResult(XMLStreamReader reader, int currentQuery) {
+        query.add(currentQuery);
+        file.add(intern(reader.getAttributeValue(null, "FileName")));
+        line.add(parseInt(reader.getAttributeValue(null, "Line"), 0));
+        column.add(parseInt(reader.getAttributeValue(null, "Column"), 0));
+        String resultSeverity = reader.getAttributeValue(null, "Severity");
+        severity.add(resultSeverity != null ? parseSeverity(resultSeverity).ordinal() : querySeverity.get(currentQuery));
+        status.add(intern(reader.getAttributeValue(null, "Status")));
+        flags.add("True".equalsIgnoreCase(reader.getAttributeValue(null, "FalsePositive")) ? CxResultsIndex.FLAG_FALSE_POSITIVE : 0);
+        similarityId.add(0);
+        pathId.add(-1);
+    }
+
+    private CxResultsIndex toIndex() {
+        final int size = query.size();
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        // group by severity, then query, then file
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int c = severity.get(a) - severity.get(b);
+                if (c != 0) {
+                    return c;
+                }
+                c = compareStrings(queryName.get(query.get(a)), queryName.get(query.get(b)));
+                if (c != 0) {
+                    return c;
+                }
+                c = compareStrings(file.get(a), file.get(b));
+                if (c != 0) {
+                    return c;
+                }
+                return line.get(a) - line.get(b);
+            }
+        });
+
+        int[] sQuery = new int[size];
+        int[] sFile = new int[size];
+        int[] sLine = new int[size];
+        int[] sColumn = new int[size];
+        byte[] sSeverity = new byte[size];
+        int[] sStatus = new int[size];
+        byte[] sFlags = new byte[size];
+        int[] sSimilarityId = new int[size];
+        long[] sPathId = new long[size];
+        long[] sFingerprint = new long[size];
+        for (int r = 0; r < size; r++) {
+            int src = order[r];
+            sQuery[r] = query.get(src);
+            sFile[r] = file.get(src);
+            sLine[r] = line.get(src);
+            sColumn[r] = column.get(src);
+            sSeverity[r] = (byte) severity.get(src);
+            sStatus[r] = status.get(src);
+            sFlags[r] = (byte) flags.get(src);
+            sSimilarityId[r] = similarityId.get(src);
+            sPathId[r] = pathId.get(src);
+            sFingerprint[r] = CxResultsIndex.fingerprint(stringOrNull(queryName.get(sQuery[r])), stringOrNull(sFile[r]), sSimilarityId[r]);
+        }
+
+        byte[] qSeverity = new byte[querySeverity.size()];
+        for (int q = 0; q < qSeverity.length; q++) {
+            qSeverity[q] = (byte) querySeverity.get(q);
+        }
+
+        return new CxResultsIndex(scanDeepLink, strings.toArray(new String[strings.size()]),
+                queryName.toArray(), queryGroup.toArray(), queryCweId.toArray(), qSeverity,
+                size, sQuery, sFile, sLine, sColumn, sSeverity, sStatus, sFlags, sSimilarityId, sPathId, sFingerprint);
+    }
+
+    private int compareStrings(int a, int b) {
+        if (a == b) {
+            return 0;
+        }
+        if (a < 0 || b < 0) {
+            return a < 0 ? -1 : 1;
+        }
+        return strings.get(a).compareToIgnoreCase(strings.get(b));
+    }
+
+    private String stringOrNull(int id) {
+        return id < 0 ? null : strings.get(id);
+    }
+
+    private int intern(String value) {
+        if (value == null) {
+            return -1;
+        }
+        if (value.length() > MAX_STRING_LENGTH) {
+            value = value.substring(0, MAX_STRING_LENGTH);
+        }
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            strings.add(value);
+            stringIds.put(value, id);
+        }
+        return id;
+    }
+
+    static CxResultSeverity parseSeverity(String value) {
+        if (value != null) {
+            for (CxResultSeverity s : CxResultSeverity.values()) {
+                if (value.regionMatches(true, 0, s.toString(), 0, s.toString().length())) {
+                    return s;
+                }
+            }
+        }
+        return CxResultSeverity.INFO;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        try {
+            return value == null ? defaultValue : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Growable primitive lists, avoid boxing every column value while parsing.
+     */
+    private static final class IntList {
+        private int[] values = new int[1024];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int i) {
+            return values[i];
+        }
+
+        void set(int i, int value) {
+            values[i] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static final class LongList {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long get(int i) {
+            return values[i];
+        }
+
+        void set(int i, long value) {
+            values[i] = value;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.checkmarx.jenkins;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Keeps the plugin's derived per-job state in sync with the builds that hold Checkmarx scan results.
+ */
+@Extension
+public class CxRunListener extends RunListener<Run> {
+
+    @Override
+    public void onCompleted(Run run, @Nonnull TaskListener listener) {
+        if (run.getAction(CxScanResult.class) != null) {
+            CxTrendChartCache.get().invalidate(run.getParent());
+            CxAggregateStore.get().update(run);
+        }
+    }
+
+    @Override
+    public void onDeleted(Run run) {
+        if (run.getAction(CxScanResult.class) != null) {
+            CxTrendChartCache.get().invalidate(run.getParent());
+            CxAggregateStore.get().removeBuild(run);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.checkmarx.jenkins;
 
+import com.checkmarx.jenkins.exception.CxCredentialsException;
 import com.cloudbees.plugins.credentials.CredentialsMatchers;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
@@ -14,19 +15,17 @@ import com.cx.restclient.exception.CxClientException;
 import com.cx.restclient.exception.CxTokenExpiredException;
 import com.cx.restclient.osa.dto.OSAResults;
 import com.cx.restclient.sast.dto.CxNameObj;
-import com.cx.restclient.sast.dto.Project;
 import com.cx.restclient.sast.dto.SASTResults;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import freemarker.template.TemplateException;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.model.*;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
 import hudson.triggers.SCMTrigger;
-import hudson.util.ComboBoxModel;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 import hudson.util.Secret;
@@ -41,16 +40,18 @@ import org.jetbrains.annotations.Nullable;
 import org.kohsuke.stapler.*;
 
 import javax.annotation.Nonnull;
+import javax.servlet.http.HttpSession;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
-import java.net.UnknownHostException;
 import java.nio.charset.Charset;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -132,6 +133,12 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
     @Nullable
     private String osaArchiveIncludePatterns;
     private boolean osaInstallBeforeScan;
+    @Nullable
+    private String logLevel;
+    private boolean osaLogSummary;
+    private boolean osaFullLogArchived;
+    @Nullable
+    private String thresholdPolicy;
 
     //////////////////////////////////////////////////////////////////////////////////////
     // Private variables
@@ -139,14 +146,21 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
 
     //server log, will NOT print to job console
     private static final JenkinsServerLogger serverLog = new JenkinsServerLogger();
-    //Print to job console, initialized within perform
-    CxLoggerAdapter log;
     private JobStatusOnError jobStatusOnError;
     private String exclusionsSetting;
     private String thresholdSettings;
     private Result vulnerabilityThresholdResult;
-    private Result resolvedVulnerabilityThresholdResult;
     private boolean avoidDuplicateProjectScans;
+    /**
+     * @deprecated per-run state moved to {@link CxScanContext}; kept so that older configurations still load
+     */
+    @Deprecated
+    private transient CxLoggerAdapter log;
+    /**
+     * @deprecated per-run state moved to {@link CxScanContext}; kept so that older configurations still load
+     */
+    @Deprecated
+    private transient Result resolvedVulnerabilityThresholdResult;
     public static final int MINIMUM_TIMEOUT_IN_MINUTES = 1;
     public static final String REPORTS_FOLDER = "Checkmarx/Reports";
     public static final String CX_ORIGIN = "Jenkins";
@@ -398,6 +412,55 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         this.failBuildOnNewSeverity = failBuildOnNewSeverity;
     }
 
+    /**
+     * Minimum level of the messages printed to the job console; messages of all levels are printed by default.
+     */
+    public String getLogLevel() {
+        return logLevel == null ? CxLoggerAdapter.LEVEL_DEBUG : logLevel;
+    }
+
+    @DataBoundSetter
+    public void setLogLevel(@Nullable String logLevel) {
+        this.logLevel = logLevel;
+    }
+
+    /**
+     * Whether the OSA component scan log is summarized instead of printed line by line.
+     */
+    public boolean isOsaLogSummary() {
+        return osaLogSummary;
+    }
+
+    @DataBoundSetter
+    public void setOsaLogSummary(boolean osaLogSummary) {
+        this.osaLogSummary = osaLogSummary;
+    }
+
+    /**
+     * Whether the full OSA component scan log is kept with the build when it is summarized.
+     */
+    public boolean isOsaFullLogArchived() {
+        return osaFullLogArchived;
+    }
+
+    @DataBoundSetter
+    public void setOsaFullLogArchived(boolean osaFullLogArchived) {
+        this.osaFullLogArchived = osaFullLogArchived;
+    }
+
+    /**
+     * Rules evaluated against the stored results of the build, see {@link CxThresholdPolicy}.
+     */
+    @Nullable
+    public String getThresholdPolicy() {
+        return thresholdPolicy;
+    }
+
+    @DataBoundSetter
+    public void setThresholdPolicy(@Nullable String thresholdPolicy) {
+        this.thresholdPolicy = Util.fixEmptyAndTrim(thresholdPolicy);
+    }
+
     public boolean isFailBuildOnNewResults() {
         return failBuildOnNewResults;
     }
@@ -654,8 +717,35 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
 
     @Override
     public void perform(@Nonnull Run<?, ?> run, @Nonnull FilePath workspace, @Nonnull Launcher launcher, @Nonnull TaskListener listener) throws InterruptedException, IOException {
+        perform(new CxScanContext(run, workspace, listener, getLogLevel()));
+    }
 
-        log = new CxLoggerAdapter(listener.getLogger());
+    /**
+     * Runs the step with the given per-run state, for the build step and for {@link CxScanStep}.
+     */
+    void perform(CxScanContext ctx) throws InterruptedException, IOException {
+        try {
+            performScan(ctx);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            ctx.span.fail(e);
+            throw e;
+        } finally {
+            ctx.log.flush();
+            if (!ctx.timings.isEmpty()) {
+                ctx.run.addAction(new CxPhaseTimingsAction(ctx.timings));
+                CxMetrics.get().recordPhases(ctx.timings);
+            }
+            ctx.span.end();
+            CxTraceExporter.get().export(ctx.span.getTrace());
+        }
+    }
+
+    private void performScan(CxScanContext ctx) throws InterruptedException, IOException {
+        Run<?, ?> run = ctx.run;
+        FilePath workspace = ctx.workspace;
+        CxLoggerAdapter log = ctx.log;
+        CxPhaseTimings timings = ctx.timings;
+        CxSpan span = ctx.span;
 
         if ((sastEnabled == null || sastEnabled) && isSkipScan(run)) {
             log.info("Checkmarx scan skipped since the build was triggered by SCM. " +
@@ -665,11 +755,15 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
 
         //resolve configuration
         final DescriptorImpl descriptor = getDescriptor();
-        EnvVars env = run.getEnvironment(listener);
-        CxScanConfig config = resolveConfiguration(run, descriptor, env, log);
+        long start = System.currentTimeMillis();
+        EnvVars env = run.getEnvironment(ctx.listener);
+        CxScanConfig config = resolveConfiguration(ctx, descriptor, env);
+        phase(timings, span, CxPhaseTimings.CONFIG, "Configuration", start);
+        span.setAttribute("checkmarx.server", config.getUrl()).setAttribute("checkmarx.project", config.getProjectName());
 
         //print configuration
         printConfiguration(config, log);
+        log.flush();
 
         //validate at least one scan type is enabled
         if (!config.getSastEnabled() && !config.getOsaEnabled()) {
@@ -679,48 +773,104 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         }
 
         //create scans and retrieve results (in jenkins agent)
-        CxScanCallable a = new CxScanCallable(config, listener);
-        ScanResults scanResults = workspace.act(a);
+        start = System.currentTimeMillis();
+        CxSpan remote = span.child("checkmarx.remote", start);
+        CxScanCallable a = new CxScanCallable(config, ctx.listener, getLogLevel(), osaLogSummary, osaLogSummary && osaFullLogArchived,
+                remote.getContext());
+        ScanResults scanResults;
+        CxMetrics.get().scanStarted(config.getUrl());
+        try {
+            scanResults = workspace.act(a);
+            span.getTrace().addAll(scanResults.getSpans());
+            if (scanResults.getLoginException() != null) {
+                throw new IOException(scanResults.getLoginException());
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            remote.fail(e);
+            throw e;
+        } finally {
+            CxMetrics.get().scanFinished(config.getUrl());
+            remote.end();
+        }
+        timings.merge(scanResults.getPhaseTimings(), start);
         CxScanResult cxScanResult = new CxScanResult(run, config);
+        ctx.scanResults = scanResults;
+        ctx.scanResult = cxScanResult;
 
         //write reports to build dir
         File checkmarxBuildDir = new File(run.getRootDir(), "checkmarx");
         checkmarxBuildDir.mkdir();
+        ctx.checkmarxBuildDir = checkmarxBuildDir;
+        if (config.getOsaEnabled() && osaLogSummary && osaFullLogArchived) {
+            copyOsaFullLog(log, workspace, checkmarxBuildDir);
+        }
 
         //in case of async mode, do not create reports (only the report of the latest scan)
         //and don't assert threshold vulnerabilities
         if (config.getSynchronous()) {
-            failTheBuild(run, config, scanResults);
+            start = System.currentTimeMillis();
+            failTheBuild(ctx, config, scanResults, cxScanResult);
+            phase(timings, span, CxPhaseTimings.THRESHOLDS, "Threshold evaluation", start);
 
             //generate html report
-            String reportName = generateHTMLReport(workspace, checkmarxBuildDir, config, scanResults);
+            start = System.currentTimeMillis();
+            CxFlightRecorder.Event event = CxFlightRecorder.REPORT_WRITE.begin();
+            String reportName = generateHTMLReport(log, workspace, checkmarxBuildDir, config, scanResults);
+            phase(timings, span, CxPhaseTimings.HTML_REPORT, "HTML report generation", start);
+            commitReportEvent(event, run, "HTML", 0, checkmarxBuildDir, reportName);
             cxScanResult.setHtmlReportName(reportName);
             run.addAction(cxScanResult);
 
 
             //create sast reports
+            start = System.currentTimeMillis();
             SASTResults sastResults = scanResults.getSastResults();
             if (sastResults.isSastResultsReady()) {
-                createSastReports(sastResults, checkmarxBuildDir,workspace);
+                event = CxFlightRecorder.REPORT_WRITE.begin();
+                createSastReports(log, sastResults, checkmarxBuildDir, workspace);
                 addEnvVarAction(run, sastResults);
                 cxScanResult.setSastResults(sastResults);
+                commitReportEvent(event, run, "SAST", cxScanResult.getHighCount() + cxScanResult.getMediumCount()
+                        + cxScanResult.getLowCount() + cxScanResult.getInfoCount(), checkmarxBuildDir, SCAN_REPORT_XML, CxScanResult.PDF_REPORT_NAME);
             }
 
             //create osa reports
             OSAResults osaResults = scanResults.getOsaResults();
             if (osaResults.isOsaResultsReady()) {
-                createOsaReports(scanResults.getOsaResults(), checkmarxBuildDir);
+                event = CxFlightRecorder.REPORT_WRITE.begin();
+                createOsaReports(log, scanResults.getOsaResults(), checkmarxBuildDir);
+                commitReportEvent(event, run, "OSA", osaResults.getOsaVulnerabilities() == null ? 0 : osaResults.getOsaVulnerabilities().size(),
+                        checkmarxBuildDir, OSA_SUMMERY_JSON, OSA_LIBRARIES_JSON, OSA_VULNERABILITIES_JSON);
+            }
+            phase(timings, span, CxPhaseTimings.REPORTS, "Report writing", start);
+
+            //evaluate the threshold policy over the stored reports
+            if (thresholdPolicy != null) {
+                start = System.currentTimeMillis();
+                evaluateThresholdPolicy(ctx, checkmarxBuildDir, cxScanResult);
+                phase(timings, span, CxPhaseTimings.POLICY, "Threshold policy evaluation", start);
             }
             return;
         }
         //Asynchronous scan - add note message and previous build reports
-        String reportName = generateHTMLReport(workspace, checkmarxBuildDir, config, scanResults);
+        start = System.currentTimeMillis();
+        CxFlightRecorder.Event event = CxFlightRecorder.REPORT_WRITE.begin();
+        String reportName = generateHTMLReport(log, workspace, checkmarxBuildDir, config, scanResults);
+        phase(timings, span, CxPhaseTimings.HTML_REPORT, "HTML report generation", start);
+        commitReportEvent(event, run, "HTML", 0, checkmarxBuildDir, reportName);
         cxScanResult.setHtmlReportName(reportName);
         run.addAction(cxScanResult);
 
     }
 
-    private CxScanConfig resolveConfiguration(Run<?, ?> run, DescriptorImpl descriptor, EnvVars env, CxLoggerAdapter log) throws IOException, InterruptedException {
+    private static void phase(CxPhaseTimings timings, CxSpan span, String key, String name, long start) {
+        timings.record(key, name, start);
+        span.phase(key, name, start).end();
+    }
+
+    private CxScanConfig resolveConfiguration(CxScanContext ctx, DescriptorImpl descriptor, EnvVars env) throws IOException, InterruptedException {
+        Run<?, ?> run = ctx.run;
+        CxLoggerAdapter log = ctx.log;
 
         CxScanConfig ret = new CxScanConfig();
 
@@ -776,7 +926,7 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                 ret.setSastHighThreshold(descriptor.getHighThresholdEnforcement());
                 ret.setSastMediumThreshold(descriptor.getMediumThresholdEnforcement());
                 ret.setSastLowThreshold(descriptor.getLowThresholdEnforcement());
-                resolvedVulnerabilityThresholdResult = Result.fromString(descriptor.getJobGlobalStatusOnThresholdViolation().name());
+                ctx.resolvedVulnerabilityThresholdResult = Result.fromString(descriptor.getJobGlobalStatusOnThresholdViolation().name());
             }
 
             if (useJobThreshold) {
@@ -785,7 +935,7 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                 ret.setSastLowThreshold(getLowThreshold());
                 ret.setSastNewResultsThresholdEnabled(failBuildOnNewResults);
                 ret.setSastNewResultsThresholdSeverity(failBuildOnNewSeverity);
-                resolvedVulnerabilityThresholdResult = vulnerabilityThresholdResult;
+                ctx.resolvedVulnerabilityThresholdResult = vulnerabilityThresholdResult;
             }
         }
 
@@ -861,39 +1011,48 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         log.info("------------------------------------------------------------------------------------------");
     }
 
-    private void createSastReports(SASTResults sastResults, File checkmarxBuildDir,@Nonnull FilePath workspace) {
+    private void createSastReports(CxLoggerAdapter log, SASTResults sastResults, File checkmarxBuildDir, @Nonnull FilePath workspace) {
         File xmlReportFile = new File(checkmarxBuildDir, SCAN_REPORT_XML);
         try {
             FileUtils.writeByteArrayToFile(xmlReportFile, sastResults.getRawXMLReport());
-            writeFileToWorkspaceReports(workspace, xmlReportFile);
+            CxMetrics.get().recordReportSize(xmlReportFile.getName(), xmlReportFile.length());
+            writeFileToWorkspaceReports(log, workspace, xmlReportFile);
         } catch (IOException e) {
             log.warn("Failed to write SAST XML report to workspace: " + e.getMessage());
         }
 
+        try {
+            CxResultsIndex.load(checkmarxBuildDir);
+        } catch (IOException e) {
+            log.warn("Failed to index SAST XML report: " + e.getMessage());
+        }
+
         if (sastResults.getPDFReport() != null) {
             File pdfReportFile = new File(checkmarxBuildDir, CxScanResult.PDF_REPORT_NAME);
             try {
                 FileUtils.writeByteArrayToFile(pdfReportFile, sastResults.getPDFReport());
+                CxMetrics.get().recordReportSize(pdfReportFile.getName(), pdfReportFile.length());
             } catch (IOException e) {
                 log.warn("Failed to write SAST PDF report to workspace: " + e.getMessage());
             }
         }
     }
 
-    private void createOsaReports(OSAResults osaResults, File checkmarxBuildDir) {
-        writeJsonObjectToFile(osaResults.getResults(), new File(checkmarxBuildDir, OSA_SUMMERY_JSON), "OSA summery json report");
-        writeJsonObjectToFile(osaResults.getOsaLibraries(), new File(checkmarxBuildDir, OSA_LIBRARIES_JSON), "OSA libraries json report");
-        writeJsonObjectToFile(osaResults.getOsaVulnerabilities(), new File(checkmarxBuildDir, OSA_VULNERABILITIES_JSON), "OSA vulnerabilities json report");
+    private void createOsaReports(CxLoggerAdapter log, OSAResults osaResults, File checkmarxBuildDir) {
+        writeJsonObjectToFile(log, osaResults.getResults(), new File(checkmarxBuildDir, OSA_SUMMERY_JSON), "OSA summery json report");
+        writeJsonObjectToFile(log, osaResults.getOsaLibraries(), new File(checkmarxBuildDir, OSA_LIBRARIES_JSON), "OSA libraries json report");
+        writeJsonObjectToFile(log, osaResults.getOsaVulnerabilities(), new File(checkmarxBuildDir, OSA_VULNERABILITIES_JSON), "OSA vulnerabilities json report");
     }
 
-    private String generateHTMLReport(@Nonnull FilePath workspace, File checkmarxBuildDir, CxScanConfig config, ScanResults results) {
+    private String generateHTMLReport(CxLoggerAdapter log, @Nonnull FilePath workspace, File checkmarxBuildDir, CxScanConfig config, ScanResults results) {
         String reportName = null;
         try {
             String reportHTML = SummaryUtils.generateSummary(results.getSastResults(), results.getOsaResults(), config);
             reportName = CxScanResult.resolveHTMLReportName(config.getSastEnabled(), config.getOsaEnabled());
             File reportFile = new File(checkmarxBuildDir, reportName);
             FileUtils.writeStringToFile(reportFile, reportHTML, Charset.defaultCharset());
-            writeFileToWorkspaceReports(workspace, reportFile);
+            CxMetrics.get().recordReportSize(reportName, reportFile.length());
+            writeFileToWorkspaceReports(log, workspace, reportFile);
         } catch (IOException | TemplateException e) {
             log.warn("Failed to generate HTML report: " + e.getMessage());
         }
@@ -901,12 +1060,12 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
 
     }
 
-    private void writeJsonObjectToFile(Object jsonObj, File to, String description) {
+    private void writeJsonObjectToFile(CxLoggerAdapter log, Object jsonObj, File to, String description) {
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
             String json = null;
-            json = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(jsonObj);
+            json = CxJson.MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(jsonObj);
             FileUtils.writeStringToFile(to, json);
+            CxMetrics.get().recordReportSize(to.getName(), to.length());
             //log.info(description + " file generated successfully. location: [" + to.getAbsolutePath() + "]");
             log.info("Copying file [" + to.getName() + "] to workspace [" + to.getAbsolutePath() + "]");
         } catch (Exception e) {
@@ -915,7 +1074,9 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         }
     }
 
-    private boolean failTheBuild(Run<?, ?> run, CxScanConfig config, ScanResults scanResults) {
+    private boolean failTheBuild(CxScanContext ctx, CxScanConfig config, ScanResults scanResults, CxScanResult cxScanResult) {
+        Run<?, ?> run = ctx.run;
+        CxLoggerAdapter log = ctx.log;
 
         Exception sastCreateException = scanResults.getSastCreateException();
         Exception sastWaitException = scanResults.getSastWaitException();
@@ -931,6 +1092,10 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         if (config.getSynchronous()) {
             thresholdExceeded = ShragaUtils.isThresholdExceeded(config, scanResults.getSastResults(), scanResults.getOsaResults(), thresholdsFailDescription);
             sastNewResultsExceeded = ShragaUtils.isThresholdForNewResultExceeded(config, scanResults.getSastResults(), thresholdsFailDescription);
+            cxScanResult.setThresholdViolated(thresholdExceeded);
+            cxScanResult.setThresholdForNewResultExceeded(sastNewResultsExceeded);
+            ctx.thresholdExceeded = thresholdExceeded;
+            ctx.newResultsThresholdExceeded = sastNewResultsExceeded;
         }
 
         boolean fail = sastCreateException != null || sastWaitException != null || osaCreateException != null || osaWaitException != null;
@@ -968,8 +1133,8 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                 for (String s : lines) {
                     log.error(s);
                 }
-                if(resolvedVulnerabilityThresholdResult != null) {
-                    run.setResult(resolvedVulnerabilityThresholdResult);
+                if(ctx.resolvedVulnerabilityThresholdResult != null) {
+                    run.setResult(ctx.resolvedVulnerabilityThresholdResult);
                 }
             }
         }
@@ -977,6 +1142,44 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         return fail;
     }
 
+    private void evaluateThresholdPolicy(CxScanContext ctx, File checkmarxBuildDir, CxScanResult cxScanResult) {
+        Run<?, ?> run = ctx.run;
+        CxLoggerAdapter log = ctx.log;
+        CxThresholdPolicy.Violation violation;
+        try {
+            CxThresholdPolicy policy = CxThresholdPolicy.get(thresholdPolicy);
+            File previousDir = null;
+            if (policy.needsPrevious()) {
+                CxScanResult previous = cxScanResult.getPreviousResult();
+                previousDir = previous == null ? null : new File(previous.owner.getRootDir(), "checkmarx");
+            }
+            violation = policy.evaluate(checkmarxBuildDir, previousDir, CxBaseline.lookup(run.getParent()), System.currentTimeMillis());
+        } catch (IllegalArgumentException | IOException e) {
+            log.error("Failed to evaluate the threshold policy: " + e.getMessage());
+            run.setResult(useUnstableOnError(getDescriptor()) ? Result.UNSTABLE : Result.FAILURE);
+            return;
+        }
+        if (violation == null) {
+            log.info("Threshold policy passed");
+            return;
+        }
+
+        cxScanResult.setThresholdViolated(true);
+        ctx.thresholdExceeded = true;
+        ctx.policyViolation = violation;
+        Result result = ctx.resolvedVulnerabilityThresholdResult;
+        if (result == null) {
+            // the policy replaces the legacy thresholds, so it follows the global setting for threshold violations
+            JobGlobalStatusOnError status = getDescriptor().getJobGlobalStatusOnThresholdViolation();
+            result = status != null ? Result.fromString(status.name()) : Result.FAILURE;
+        }
+        run.setResult(result);
+        log.error("********************************************");
+        log.error(" The Build Failed for the Following Reasons:");
+        log.error("********************************************");
+        log.error(violation.toString());
+    }
+
     private void addEnvVarAction(Run<?, ?> run, SASTResults sastResults) {
         EnvVarAction envVarAction = new EnvVarAction();
         envVarAction.setCxSastResults(sastResults.getHigh(),
@@ -996,7 +1199,31 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         return ret;
     }
 
-    private void writeFileToWorkspaceReports(FilePath workspace, File file) {
+    private static void commitReportEvent(CxFlightRecorder.Event event, Run<?, ?> run, String report, long results, File dir, String... fileNames) {
+        if (!event.isEnabled()) {
+            return;
+        }
+        long bytes = 0;
+        for (String name : fileNames) {
+            if (name != null) {
+                bytes += new File(dir, name).length();
+            }
+        }
+        event.set(0, run.getParent().getFullName()).set(1, report).set(2, bytes).set(3, results).commit();
+    }
+
+    private void copyOsaFullLog(CxLoggerAdapter log, FilePath workspace, File checkmarxBuildDir) throws InterruptedException {
+        FilePath fullLog = workspace.child(REPORTS_FOLDER).child(CxOsaLogSummary.FULL_LOG_FILE_NAME);
+        try {
+            if (fullLog.exists()) {
+                fullLog.copyTo(new FilePath(new File(checkmarxBuildDir, CxOsaLogSummary.FULL_LOG_FILE_NAME)));
+            }
+        } catch (IOException e) {
+            log.warn("Failed to copy the OSA component scan log to the build: " + e.getMessage());
+        }
+    }
+
+    private void writeFileToWorkspaceReports(CxLoggerAdapter log, FilePath workspace, File file) {
 
         String remoteDirPath = workspace.getRemote() + "/" + REPORTS_FOLDER;
         FileInputStream fis = null;
@@ -1105,6 +1332,10 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
 
         public static final int FULL_SCAN_CYCLE_MIN = 1;
         public static final int FULL_SCAN_CYCLE_MAX = 99;
+        public static final int PROJECT_NAME_COMPLETION_LIMIT = 20;
+        private static final int MAX_CONNECTION_DIAGNOSTICS = 10;
+
+        private final transient LinkedList<CxConnectionDiagnostics.Report> connectionDiagnostics = new LinkedList<CxConnectionDiagnostics.Report>();
 
         //////////////////////////////////////////////////////////////////////////////////////
         //  Persistent plugin global configuration parameters
@@ -1381,26 +1612,49 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                                                @QueryParameter final String username, @QueryParameter final String timestamp, @QueryParameter final String credentialsId, @AncestorInPath Item item) {
             // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
 
-            CxCredentials cred = null;
-            CxShragaClient shragaClient = null;
+            final CxCredentials cred;
+            CxConnectionDiagnostics diagnostics;
             try {
                 cred = CxCredentials.resolveCredentials(true, serverUrl, username, getPasswordPlainText(password), credentialsId, this, item);
                 CxCredentials.validateCxCredentials(cred);
-                shragaClient = new CxShragaClient(cred.getServerUrl(), cred.getUsername(), cred.getPassword(), CX_ORIGIN, !this.isEnableCertificateValidation(), serverLog);
+                diagnostics = new CxConnectionDiagnostics(cred.getServerUrl(), !this.isEnableCertificateValidation(), new Callable<CxShragaClient>() {
+                    @Override
+                    public CxShragaClient call() throws Exception {
+                        // always a fresh login, the point is to verify the credentials
+                        return prepareLoggedInClient(cred);
+                    }
+                });
             } catch (Exception e) {
                 return buildError(e, "Failed to init cx client");
             }
 
-            try {
-                shragaClient.login();
-                return FormValidation.ok("Success");
-
-            } catch (UnknownHostException e) {
-                return buildError(e, "Failed to login to Chekmarx server");
-
-            } catch (Exception e) {
-                return buildError(e, "Failed to login to Chekmarx server");
+            CxConnectionDiagnostics.Report report = diagnostics.run();
+            CxConnectionDiagnostics.Report previous = recordConnectionDiagnostics(report);
+            String table = report.toHtml(previous);
+            if (!report.isSuccessful()) {
+                serverLog.error("Checkmarx connection test failed: {}", report.getError());
+                return FormValidation.errorWithMarkup(Util.escape(report.getError()) + table);
+            }
+            return FormValidation.okWithMarkup("Success" + table);
+        }
 
+        /**
+         * Keeps the report and returns the previous one for the same server, if any.
+         */
+        private CxConnectionDiagnostics.Report recordConnectionDiagnostics(CxConnectionDiagnostics.Report report) {
+            synchronized (connectionDiagnostics) {
+                CxConnectionDiagnostics.Report previous = null;
+                for (CxConnectionDiagnostics.Report r : connectionDiagnostics) {
+                    if (r.getServerUrl().equals(report.getServerUrl())) {
+                        previous = r;
+                        break;
+                    }
+                }
+                connectionDiagnostics.addFirst(report);
+                while (connectionDiagnostics.size() > MAX_CONNECTION_DIAGNOSTICS) {
+                    connectionDiagnostics.removeLast();
+                }
+                return previous;
             }
         }
 
@@ -1417,34 +1671,127 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         private CxShragaClient prepareLoggedInClient(CxCredentials credentials)
                 throws IOException, CxClientException, CxTokenExpiredException {
             CxShragaClient ret = new CxShragaClient(credentials.getServerUrl(), credentials.getUsername(), credentials.getPassword(), CX_ORIGIN, !this.isEnableCertificateValidation(), serverLog);
+            long start = System.currentTimeMillis();
+            CxMetrics.get().recordServerRequests(1);
             ret.login();
+            CxMetrics.get().recordLogin(System.currentTimeMillis() - start);
             return ret;
         }
 
-        /*
-         *  Note: This method is called concurrently by multiple threads, refrain from using mutable
-         *  shared state to avoid synchronization issues.
+        /**
+         * Returns the server lists used by the configuration form from the {@link CxServerMetadataCache},
+         * fetching all of them with a single login when they are not cached.
          */
-        public ComboBoxModel doFillProjectNameItems(@QueryParameter final boolean useOwnServerCredentials, @QueryParameter final String serverUrl,
-                                                    @QueryParameter final String username, @QueryParameter final String password, @QueryParameter final String timestamp, @QueryParameter final String credentialsId, @AncestorInPath Item item) {
-            // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
-            ComboBoxModel projectNames = new ComboBoxModel();
+        private CxServerMetadataCache.Metadata getServerMetadata(final CxCredentials credentials) throws Exception {
+            return CxServerMetadataCache.get().getMetadata(credentials, !isEnableCertificateValidation(), new Callable<CxServerMetadataCache.Metadata>() {
+                @Override
+                public CxServerMetadataCache.Metadata call() throws Exception {
+                    return withSession(credentials, new CxSessionPool.Operation<CxServerMetadataCache.Metadata>() {
+                        @Override
+                        public CxServerMetadataCache.Metadata run(CxShragaClient shragaClient) throws Exception {
+                            CxMetrics.get().recordServerRequests(4);
+                            return new CxServerMetadataCache.Metadata(shragaClient.getAllProjects(), shragaClient.getPresetList(),
+                                    shragaClient.getConfigurationSetList(), shragaClient.getTeamList());
+                        }
+                    });
+                }
+            });
+        }
 
+        /**
+         * Loads the server lists of the global credentials into the {@link CxServerMetadataCache}, if they are set.
+         */
+        void warmUpServerMetadata() {
+            if (StringUtils.isEmpty(getServerUrl())) {
+                return;
+            }
             try {
-                CxCredentials credentials = CxCredentials.resolveCredentials(!useOwnServerCredentials, serverUrl, username, getPasswordPlainText(password), credentialsId, this, item);
-                CxShragaClient shragaClient = prepareLoggedInClient(credentials);
-                List<Project> projects = shragaClient.getAllProjects();
+                getServerMetadata(resolveSavedCredentials(null));
+            } catch (Exception e) {
+                serverLog.debug("Failed to load Checkmarx server metadata: {}", e.getMessage());
+            }
+        }
 
-                for (Project p : projects) {
-                    projectNames.add(p.getName());
+        /**
+         * Runs the operation with a logged in client borrowed from the {@link CxSessionPool}.
+         */
+        private <T> T withSession(final CxCredentials credentials, CxSessionPool.Operation<T> operation) throws Exception {
+            return CxSessionPool.get().execute(credentials, !isEnableCertificateValidation(), new Callable<CxShragaClient>() {
+                @Override
+                public CxShragaClient call() throws Exception {
+                    return prepareLoggedInClient(credentials);
                 }
+            }, operation);
+        }
 
-                return projectNames;
-
+        /**
+         * Type-ahead completion of the project name: returns the cached project names starting with the typed
+         * text. Autocomplete requests carry only the typed value, so the credentials the form showed when it last
+         * filled the preset list are used. This covers unsaved jobs and the pipeline snippet generator. Without
+         * them, the credentials saved in the job are used, and nothing is completed when the job has none saved.
+         */
+        public AutoCompletionCandidates doAutoCompleteProjectName(@QueryParameter final String value, @AncestorInPath Item item) {
+            AutoCompletionCandidates candidates = new AutoCompletionCandidates();
+            CxFlightRecorder.Event event = CxFlightRecorder.FORM_FILL.begin();
+            try {
+                CxCredentials credentials = formCredentials(item);
+                if (credentials == null) {
+                    credentials = resolveSavedCredentials(item);
+                }
+                if (credentials != null) {
+                    for (String name : getServerMetadata(credentials).findProjectNames(value, PROJECT_NAME_COMPLETION_LIMIT)) {
+                        candidates.add(name);
+                    }
+                }
             } catch (Exception e) {
-                serverLog.error("Failed to populate project list: " + e.toString(), e);
-                return projectNames; // Return empty list of project names
+                serverLog.debug("Failed to complete project name", e);
+            }
+            event.set(0, "projectName (completion)").set(1, (long) candidates.getValues().size()).commit();
+            return candidates;
+        }
+
+        private static <T extends Collection<?>> T formFilled(CxFlightRecorder.Event event, String field, T model) {
+            event.set(0, field).set(1, (long) model.size()).commit();
+            return model;
+        }
+
+        /**
+         * Returns the credentials of the Checkmarx build step saved in the given job, the global ones without a
+         * job, or null when the job has no saved build step, e.g. a pipeline or a job not saved yet.
+         */
+        private CxCredentials resolveSavedCredentials(Item item) throws CxCredentialsException {
+            if (item == null) {
+                return CxCredentials.resolveCredentials(false, null, null, null, null, this, null);
             }
+            if (item instanceof Project) {
+                CxScanBuilder builder = ((Project<?, ?>) item).getBuildersList().get(CxScanBuilder.class);
+                if (builder != null) {
+                    return CxCredentials.resolveCredentials(builder.isUseOwnServerCredentials(), builder.getServerUrl(), builder.getUsername(),
+                            builder.getPasswordPlainText(), builder.getCredentialsId(), this, item);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Remembers in the HTTP session the credentials a configuration form of the given job currently shows,
+         * for the requests of the form that only carry one field.
+         */
+        private static void rememberFormCredentials(Item item, CxCredentials credentials) {
+            StaplerRequest req = Stapler.getCurrentRequest();
+            if (req != null) {
+                req.getSession().setAttribute(formCredentialsKey(item), credentials);
+            }
+        }
+
+        private static CxCredentials formCredentials(Item item) {
+            StaplerRequest req = Stapler.getCurrentRequest();
+            HttpSession session = req == null ? null : req.getSession(false);
+            return session == null ? null : (CxCredentials) session.getAttribute(formCredentialsKey(item));
+        }
+
+        private static String formCredentialsKey(Item item) {
+            return CxScanBuilder.class.getName() + ".formCredentials:" + (item == null ? "" : item.getFullName());
         }
 
         /**
@@ -1465,23 +1812,24 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                                               @QueryParameter final String username, @QueryParameter final String password, @QueryParameter final String timestamp, @QueryParameter final String credentialsId, @AncestorInPath Item item) {
             // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
             ListBoxModel listBoxModel = new ListBoxModel();
+            CxFlightRecorder.Event event = CxFlightRecorder.FORM_FILL.begin();
             try {
                 CxCredentials credentials = CxCredentials.resolveCredentials(!useOwnServerCredentials, serverUrl, username, getPasswordPlainText(password), credentialsId, this, item);
-                CxShragaClient shragaClient = prepareLoggedInClient(credentials);
+                rememberFormCredentials(item, credentials);
 
                 //todo import preset
-                List<com.cx.restclient.sast.dto.Preset> presets = shragaClient.getPresetList();
+                List<com.cx.restclient.sast.dto.Preset> presets = getServerMetadata(credentials).getPresets();
 
                 for (com.cx.restclient.sast.dto.Preset p : presets) {
                     listBoxModel.add(new ListBoxModel.Option(p.getName(), Integer.toString(p.getId())));
                 }
-                return listBoxModel;
+                return formFilled(event, "preset", listBoxModel);
 
             } catch (Exception e) {
-                serverLog.error("Failed to populate preset list: " + e.toString());
+                serverLog.error("Failed to populate preset list", e);
                 String message = "Provide Checkmarx server credentials to see presets list";
                 listBoxModel.add(new ListBoxModel.Option(message, message));
-                return listBoxModel;
+                return formFilled(event, "preset", listBoxModel);
             }
         }
 
@@ -1507,24 +1855,24 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                                                       @QueryParameter final String username, @QueryParameter final String password, @QueryParameter final String timestamp, @QueryParameter final String credentialsId, @AncestorInPath Item item) {
             // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
             ListBoxModel listBoxModel = new ListBoxModel();
+            CxFlightRecorder.Event event = CxFlightRecorder.FORM_FILL.begin();
             try {
 
                 CxCredentials credentials = CxCredentials.resolveCredentials(!useOwnServerCredentials, serverUrl, username, getPasswordPlainText(password), credentialsId, this, item);
 
-                CxShragaClient shragaClient = prepareLoggedInClient(credentials);
-                List<CxNameObj> configurationList = shragaClient.getConfigurationSetList();
+                List<CxNameObj> configurationList = getServerMetadata(credentials).getConfigurationSets();
 
                 for (CxNameObj cs : configurationList) {
                     listBoxModel.add(new ListBoxModel.Option(cs.getName(), Long.toString(cs.getId())));
                 }
 
             } catch (Exception e) {
-                serverLog.error("Failed to populate source encodings list: " + e.getMessage());
+                serverLog.error("Failed to populate source encodings list", e);
                 String message = "Provide Checkmarx server credentials to see source encodings list";
                 listBoxModel.add(new ListBoxModel.Option(message, message));
             }
 
-            return listBoxModel;
+            return formFilled(event, "sourceEncoding", listBoxModel);
         }
 
 
@@ -1538,22 +1886,22 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
                                                @QueryParameter final String username, @QueryParameter final String password, @QueryParameter final String timestamp, @QueryParameter final String credentialsId, @AncestorInPath Item item) {
             // timestamp is not used in code, it is one of the arguments to invalidate Internet Explorer cache
             ListBoxModel listBoxModel = new ListBoxModel();
+            CxFlightRecorder.Event event = CxFlightRecorder.FORM_FILL.begin();
             try {
                 CxCredentials credentials = CxCredentials.resolveCredentials(!useOwnServerCredentials, serverUrl, username, getPasswordPlainText(password), credentialsId, this, item);
 
-                CxShragaClient shragaClient = prepareLoggedInClient(credentials);
-                List<Team> teamList = shragaClient.getTeamList();
+                List<Team> teamList = getServerMetadata(credentials).getTeams();
                 for (Team team : teamList) {
                     listBoxModel.add(new ListBoxModel.Option(team.getFullName(), team.getId()));
                 }
 
-                return listBoxModel;
+                return formFilled(event, "groupId", listBoxModel);
 
             } catch (Exception e) {
-                serverLog.error("Failed to populate team list: " + e.toString());
+                serverLog.error("Failed to populate team list", e);
                 String message = "Provide Checkmarx server credentials to see teams list";
                 listBoxModel.add(new ListBoxModel.Option(message, message));
-                return listBoxModel;
+                return formFilled(event, "groupId", listBoxModel);
             }
 
         }
@@ -1567,6 +1915,15 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
 
         }
 
+        public ListBoxModel doFillLogLevelItems() {
+            ListBoxModel listBoxModel = new ListBoxModel();
+            listBoxModel.add(new ListBoxModel.Option("Debug", CxLoggerAdapter.LEVEL_DEBUG));
+            listBoxModel.add(new ListBoxModel.Option("Info", CxLoggerAdapter.LEVEL_INFO));
+            listBoxModel.add(new ListBoxModel.Option("Warning", CxLoggerAdapter.LEVEL_WARN));
+            listBoxModel.add(new ListBoxModel.Option("Error", CxLoggerAdapter.LEVEL_ERROR));
+            return listBoxModel;
+        }
+
         public ListBoxModel doFillVulnerabilityThresholdResultItems() {
             ListBoxModel listBoxModel = new ListBoxModel();
 
@@ -1663,6 +2020,15 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
         }
 
 
+        public FormValidation doCheckThresholdPolicy(@QueryParameter final String value) {
+            try {
+                CxThresholdPolicy.get(value);
+                return FormValidation.ok();
+            } catch (IllegalArgumentException e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
         public FormValidation doCheckOsaHighThresholdEnforcement(@QueryParameter final Integer value) {
             return checkNonNegativeValue(value);
         }
@@ -1736,6 +2102,8 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
 
             req.bindJSON(this, formData.getJSONObject("checkmarx"));
             save();
+            CxServerMetadataCache.get().invalidateAll();
+            CxSessionPool.get().clear();
             return super.configure(req, formData);
         }
 
@@ -1765,21 +2133,22 @@ public class CxScanBuilder extends Builder implements SimpleBuildStep {
 
         public ListBoxModel doFillCredentialsIdItems(@AncestorInPath Item item, @QueryParameter String credentialsId) {
             StandardListBoxModel result = new StandardListBoxModel();
+            CxFlightRecorder.Event event = CxFlightRecorder.FORM_FILL.begin();
             if (item == null) {
                 if (!Jenkins.getInstance().hasPermission(Jenkins.ADMINISTER)) {
-                    return result.add(credentialsId);
+                    return formFilled(event, "credentialsId", result.add(credentialsId));
                 }
             } else {
                 if (!item.hasPermission(Item.EXTENDED_READ)
                         && !item.hasPermission(CredentialsProvider.USE_ITEM)) {
-                    return result.add(credentialsId);
+                    return formFilled(event, "credentialsId", result.add(credentialsId));
                 }
             }
 
-            return result
+            return formFilled(event, "credentialsId", result
                     .withEmptySelection()
                     .withAll(CredentialsProvider.lookupCredentials(StandardUsernamePasswordCredentials.class, item, null, Collections.<DomainRequirement>emptyList()))
-                    .withMatching(CredentialsMatchers.withId(credentialsId));
+                    .withMatching(CredentialsMatchers.withId(credentialsId)));
         }
 
         public boolean isOldCredentials() {
@@ -5,80 +5,126 @@ import com.cx.restclient.configuration.CxScanConfig;
 import com.cx.restclient.exception.CxClientException;
 import com.cx.restclient.osa.dto.OSAResults;
 import com.cx.restclient.sast.dto.SASTResults;
-import hudson.FilePath;
 import hudson.model.TaskListener;
 import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import java.util.logging.StreamHandler;
+import java.net.InetAddress;
 
 
-public class CxScanCallable implements FilePath.FileCallable<ScanResults>, Serializable {
+public class CxScanCallable extends MasterToSlaveFileCallable<ScanResults> {
 
     private static final long serialVersionUID = 1L;
 
     private final CxScanConfig config;
     private final TaskListener listener;
+    private final String logLevel;
+    private final boolean osaLogSummary;
+    private final boolean osaFullLogArchived;
+    private final CxSpan.Context traceContext;
 
-    public CxScanCallable(CxScanConfig config, TaskListener listener) {
+    public CxScanCallable(CxScanConfig config, TaskListener listener, String logLevel, boolean osaLogSummary, boolean osaFullLogArchived,
+                          CxSpan.Context traceContext) {
         this.config = config;
         this.listener = listener;
+        this.logLevel = logLevel;
+        this.osaLogSummary = osaLogSummary;
+        this.osaFullLogArchived = osaFullLogArchived;
+        this.traceContext = traceContext;
     }
 
     @Override
     public ScanResults invoke(File file, VirtualChannel channel) throws IOException, InterruptedException {
 
-        CxLoggerAdapter log = new CxLoggerAdapter(listener.getLogger());
+        CxLoggerAdapter log = new CxLoggerAdapter(listener.getLogger(), logLevel);
+        try {
+            return scan(file, log);
+        } finally {
+            log.flush();
+        }
+    }
+
+    private ScanResults scan(File file, CxLoggerAdapter log) throws IOException, InterruptedException {
         config.setSourceDir(file.getAbsolutePath());
         config.setReportsDir(file);
         ScanResults ret = new ScanResults();
         ret.setSastResults(new SASTResults());
         ret.setOsaResults(new OSAResults());
+        CxPhaseTimings timings = new CxPhaseTimings();
+        ret.setPhaseTimings(timings);
+        CxSpan span = CxTrace.continueFrom(traceContext, "checkmarx.agent.scan")
+                .setAttribute("checkmarx.project", config.getProjectName())
+                .setAttribute("host.name", hostName());
+        try {
+            runScan(file, log, ret, timings, span);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            span.fail(e);
+            throw e;
+        } finally {
+            span.end();
+            ret.setSpans(span.getTrace().getSpans());
+        }
+        return ret;
+    }
+
+    private void runScan(File file, CxLoggerAdapter log, ScanResults ret, CxPhaseTimings timings, CxSpan span) throws IOException, InterruptedException {
 
         boolean sastCreated = false;
         boolean osaCreated = false;
 
+        long start = System.currentTimeMillis();
+        CxFlightRecorder.Event event = CxFlightRecorder.SCAN_PHASE.begin();
         CxShragaClient shraga = new CxShragaClient(config, log);
         try {
             shraga.init();
         } catch (Exception e) {
-            throw new IOException(e);
+            // returned rather than thrown, so the spans of the failed scan reach the controller
+            ret.setLoginException(e);
+        }
+        endPhase(timings, event, span, CxPhaseTimings.LOGIN, "Login", start, "init", ret.getLoginException());
+        log.flush();
+        if (ret.getLoginException() != null) {
+            return;
         }
 
         if (config.getSastEnabled()) {
+            start = System.currentTimeMillis();
+            event = CxFlightRecorder.SCAN_PHASE.begin();
             try {
                 shraga.createSASTScan();
                 sastCreated = true;
             } catch (IOException | CxClientException e) {
                 ret.setSastCreateException(e);
             }
+            endPhase(timings, event, span, CxPhaseTimings.SAST_UPLOAD, "SAST packaging and upload", start, "createSASTScan", ret.getSastCreateException());
+            log.flush();
         }
 
         if (config.getOsaEnabled()) {
-            //---------------------------
-            //we do this in order to redirect the logs from the filesystem agent component to the build console
-            Logger rootLog = Logger.getLogger("");
-            StreamHandler handler = new StreamHandler(listener.getLogger(), new ComponentScanFormatter());
-            handler.setLevel(Level.ALL);
-            rootLog.addHandler(handler);
-            //---------------------------
+            //redirect the logs of the component scan to the console of this build only
+            CxOsaLogRouter.Route route = CxOsaLogRouter.route(createOsaLogSink(file, log));
 
+            log.flush();
+            start = System.currentTimeMillis();
+            event = CxFlightRecorder.SCAN_PHASE.begin();
             try {
                 shraga.createOSAScan();
                 osaCreated = true;
             } catch (CxClientException | IOException e) {
                 ret.setOsaCreateException(e);
             } finally {
-                handler.flush();
-                rootLog.removeHandler(handler);
+                endPhase(timings, event, span, CxPhaseTimings.OSA_UPLOAD, "OSA dependency resolution and upload", start, "createOSAScan", ret.getOsaCreateException());
+                log.flush();
+                route.close();
             }
         }
 
         if (sastCreated) {
+            log.flush();
+            start = System.currentTimeMillis();
+            event = CxFlightRecorder.SCAN_PHASE.begin();
             try {
                 SASTResults sastResults = config.getSynchronous() ? shraga.waitForSASTResults() : shraga.getLatestSASTResults();
                 ret.setSastResults(sastResults);
@@ -90,19 +136,67 @@ public class CxScanCallable implements FilePath.FileCallable<ScanResults>, Seria
 
             } catch (CxClientException | IOException e) {
                 ret.setSastWaitException(e);
+            } finally {
+                endPhase(timings, event, span, CxPhaseTimings.SAST_WAIT, "SAST queue, scan and report download", start, "waitForSASTResults", ret.getSastWaitException());
             }
         }
 
         if (osaCreated) {
+            log.flush();
+            start = System.currentTimeMillis();
+            event = CxFlightRecorder.SCAN_PHASE.begin();
             try {
                 OSAResults osaResults = config.getSynchronous() ? shraga.waitForOSAResults() : shraga.getLatestOSAResults();
                 ret.setOsaResults(osaResults);
             } catch (CxClientException | IOException e) {
                 ret.setOsaWaitException(e);
+            } finally {
+                endPhase(timings, event, span, CxPhaseTimings.OSA_WAIT, "OSA scan and report download", start, "waitForOSAResults", ret.getOsaWaitException());
             }
         }
 
-        return ret;
+    }
+
+    /**
+     * Ends a phase in the timings, the flight recorder and the trace.
+     */
+    private void endPhase(CxPhaseTimings timings, CxFlightRecorder.Event event, CxSpan span, String key, String name, long start,
+                          String clientCall, Exception failure) {
+        timings.record(key, name, start);
+        event.set(0, key).set(1, config.getProjectName()).commit();
+        CxSpan phase = span.phase(key, name, start).setAttribute("checkmarx.client.call", clientCall);
+        if (failure != null) {
+            phase.fail(failure);
+        }
+        phase.end();
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private CxOsaLogRouter.Sink createOsaLogSink(File workspace, CxLoggerAdapter log) {
+        if (!osaLogSummary) {
+            return new CxOsaLogRouter.ConsoleSink(listener.getLogger());
+        }
+        File fullLogFile = null;
+        if (osaFullLogArchived) {
+            fullLogFile = new File(new File(workspace, CxScanBuilder.REPORTS_FOLDER), CxOsaLogSummary.FULL_LOG_FILE_NAME);
+        }
+        try {
+            return new CxOsaLogSummary(listener.getLogger(), fullLogFile);
+        } catch (IOException e) {
+            log.warn("Failed to create the OSA component scan log file, it will not be archived: " + e.getMessage());
+            try {
+                return new CxOsaLogSummary(listener.getLogger(), null);
+            } catch (IOException ignored) {
+                return new CxOsaLogRouter.ConsoleSink(listener.getLogger());
+            }
+        }
     }
 
     private void cancelScan(CxShragaClient shraga) {
@@ -0,0 +1,47 @@
+package com.checkmarx.jenkins;
+
+import hudson.FilePath;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import java.io.File;
+
+/**
+ * State of one execution of the Checkmarx step, whether run as a build step or as the {@link CxScanStep pipeline
+ * step}. The {@link CxScanBuilder} only holds configuration, so concurrent builds of a job and parallel branches of
+ * a pipeline can share it; everything that changes while a scan runs lives here.
+ */
+final class CxScanContext {
+
+    final Run<?, ?> run;
+    final FilePath workspace;
+    final TaskListener listener;
+    //Print to job console
+    final CxLoggerAdapter log;
+    final CxPhaseTimings timings = new CxPhaseTimings();
+    final CxSpan span;
+
+    /**
+     * Build result to set when thresholds are exceeded, resolved with the configuration.
+     */
+    Result resolvedVulnerabilityThresholdResult;
+
+    // outcome, filled in as the step goes
+    ScanResults scanResults;
+    CxScanResult scanResult;
+    File checkmarxBuildDir;
+    boolean thresholdExceeded;
+    boolean newResultsThresholdExceeded;
+    CxThresholdPolicy.Violation policyViolation;
+
+    CxScanContext(Run<?, ?> run, FilePath workspace, TaskListener listener, String logLevel) {
+        this.run = run;
+        this.workspace = workspace;
+        this.listener = listener;
+        this.log = new CxLoggerAdapter(listener.getLogger(), logLevel);
+        this.span = CxTrace.startRoot("checkmarx.perform")
+                .setAttribute("jenkins.job", run.getParent().getFullName())
+                .setAttribute("jenkins.build", (long) run.getNumber());
+    }
+}
@@ -6,24 +6,28 @@ import com.checkmarx.jenkins.legacy8_7.SastScanResult;
 import com.checkmarx.jenkins.legacy8_7.ThresholdConfig;
 import com.cx.restclient.configuration.CxScanConfig;
 import com.cx.restclient.sast.dto.SASTResults;
+import com.fasterxml.jackson.core.JsonGenerator;
 import hudson.PluginWrapper;
 import hudson.model.Action;
+import hudson.model.Item;
 import hudson.model.Run;
-import hudson.util.IOUtils;
 import jenkins.model.Jenkins;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
 
-import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
+import java.math.BigInteger;
 import java.nio.charset.Charset;
-import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -53,10 +57,20 @@ public class CxScanResult implements Action {
     private ThresholdConfig sastThresholdConfig;
     private ThresholdConfig osaThresholdConfig;
     private boolean isThresholdForNewResultExceeded = false;
+    private Boolean thresholdViolated;
 
-    private File pdfReport;
+    /**
+     * @deprecated absolute path stored by older versions, which breaks when the job moves; the report is looked up
+     * in the build directory instead
+     */
+    @Deprecated
+    private transient File pdfReport;
     public static final String PDF_REPORT_NAME = "ScanReport.pdf";
     public static final String OSA_PDF_REPORT_NAME = "OSAReport.pdf";
+    private static final String LEGACY_HTML_REPORT_NAME = "report.html";
+    private static final String NORMALIZED_LEGACY_HTML_REPORT_NAME = "report.normalized.html";
+    private static final String HTML_REPORT_NOT_FOUND = "<h1>Checkmarx HTML report not found<h1>";
+    private static final Pattern SELF_CLOSING_DIV = Pattern.compile("(<div[^>]*)(\\s*/>)");
     private boolean osaSuccessful; //osa fails flag for jelly
 
     private String htmlReportName;
@@ -116,6 +130,18 @@ public class CxScanResult implements Action {
         isThresholdForNewResultExceeded = thresholdForNewResultExceeded;
     }
 
+    /**
+     * Whether the build's vulnerability thresholds were evaluated and exceeded; null if they were not evaluated.
+     */
+    @Nullable
+    public Boolean getThresholdViolated() {
+        return thresholdViolated;
+    }
+
+    public void setThresholdViolated(Boolean thresholdViolated) {
+        this.thresholdViolated = thresholdViolated;
+    }
+
     public String getLargeIconFileName() {
         if (isShowResults()) {
             return getIconPath() + "CxIcon48x48.png";
@@ -198,10 +224,12 @@ public class CxScanResult implements Action {
         this.osaThresholdConfig = osaThresholdConfig;
     }
 
+    private File getPdfReportFile() {
+        return new File(new File(owner.getRootDir(), "checkmarx"), PDF_REPORT_NAME);
+    }
+
     public boolean isPdfReportReady() {
-        File buildDirectory = owner.getRootDir();
-        pdfReport = new File(buildDirectory, "/checkmarx/" + PDF_REPORT_NAME);
-        return pdfReport.exists();
+        return getPdfReportFile().exists();
     }
 
     public String getPdfReportUrl() {
@@ -209,15 +237,24 @@ public class CxScanResult implements Action {
     }
 
     public void doPdfReport(StaplerRequest req, StaplerResponse rsp) throws IOException {
-        rsp.setContentType("application/pdf");
-        ServletOutputStream outputStream = rsp.getOutputStream();
-        File buildDirectory = owner.getRootDir();
-        File a = new File(buildDirectory, "/checkmarx/" + PDF_REPORT_NAME);
+        CxReportFileServer.serve(req, rsp, getPdfReportFile(), "application/pdf", false);
+    }
+
+    private File getOsaFullLogFile() {
+        return new File(new File(owner.getRootDir(), "checkmarx"), CxOsaLogSummary.FULL_LOG_FILE_NAME);
+    }
 
-        IOUtils.copy(a, outputStream);
+    public boolean isOsaFullLogReady() {
+        return getOsaFullLogFile().exists();
+    }
+
+    public String getOsaFullLogUrl() {
+        return "/osaFullLog";
+    }
 
-        outputStream.flush();
-        outputStream.close();
+    public void doOsaFullLog(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        rsp.setHeader("Content-Disposition", "attachment; filename=" + CxOsaLogSummary.FULL_LOG_FILE_NAME);
+        CxReportFileServer.serve(req, rsp, getOsaFullLogFile(), "application/gzip", false);
     }
 
     public static String resolveHTMLReportName(boolean sastEnabled, boolean osaEnabled) {
@@ -238,35 +275,226 @@ public class CxScanResult implements Action {
 
 
 
-    public String getHtmlReport() throws IOException {
-        String htmlReport;
+    /**
+     * Resolves the stored HTML report of this build, or null if there is none.
+     * Legacy reports (up to version 8.80.0) are normalized once and the result is kept next to the original.
+     */
+    @Nullable
+    public File getHtmlReportFile() throws IOException {
         File cxBuildDirectory = new File(owner.getRootDir(), "checkmarx");
 
         //backward compatibility (up to version 8.80.0)
-        if(htmlReportName == null) {
-            File oldReport = new File(cxBuildDirectory, "report.html");
-            if(oldReport.exists()) {
-                htmlReport = FileUtils.readFileToString(oldReport, Charset.defaultCharset());
-                Pattern patt = Pattern.compile("(<div[^>]*)(\\s*/>)");
-                Matcher mattcher = patt.matcher(htmlReport);
-                if (mattcher.find()){
-                    htmlReport = mattcher.replaceAll("$1></div>");
-                }
-
-                return htmlReport;
+        if (htmlReportName == null) {
+            File oldReport = new File(cxBuildDirectory, LEGACY_HTML_REPORT_NAME);
+            if (!oldReport.exists()) {
+                return null;
+            }
+            File normalized = new File(cxBuildDirectory, NORMALIZED_LEGACY_HTML_REPORT_NAME);
+            if (!normalized.exists() || normalized.lastModified() < oldReport.lastModified()) {
+                normalizeLegacyReport(oldReport, normalized);
+            }
+            return normalized;
+        }
+
+        File report = new File(cxBuildDirectory, htmlReportName);
+        return report.isFile() ? report : null;
+    }
+
+    private static void normalizeLegacyReport(File oldReport, File normalized) throws IOException {
+        String htmlReport = FileUtils.readFileToString(oldReport, Charset.defaultCharset());
+        Matcher matcher = SELF_CLOSING_DIV.matcher(htmlReport);
+        if (matcher.find()) {
+            htmlReport = matcher.replaceAll("$1></div>");
+        }
+        File tmp = new File(normalized.getParentFile(), normalized.getName() + ".tmp");
+        FileUtils.writeStringToFile(tmp, htmlReport, Charset.defaultCharset());
+        if (!tmp.renameTo(normalized)) {
+            normalized.delete();
+            if (!tmp.renameTo(normalized)) {
+                throw new IOException("Failed to write " + normalized);
+            }
+        }
+    }
+
+    /**
+     * Streams the stored HTML report from disk. Used by the build page views instead of inlining the report.
+     */
+    public void doHtmlReport(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        File report = getHtmlReportFile();
+        if (report == null) {
+            rsp.setContentType("text/html;charset=UTF-8");
+            rsp.getWriter().print(HTML_REPORT_NOT_FOUND);
+            return;
+        }
+        CxFlightRecorder.Event event = CxFlightRecorder.HTML_REPORT.begin();
+        CxReportFileServer.serve(req, rsp, report, "text/html;charset=" + Charset.defaultCharset().name(), true);
+        event.set(0, owner.getParent().getFullName()).set(1, report.length()).commit();
+    }
+
+    public String getHtmlReportUrl() {
+        return "/htmlReport";
+    }
+
+    /**
+     * Whether this build has a stored SAST report the findings views can be served from.
+     */
+    public boolean isResultsStored() {
+        return new File(new File(owner.getRootDir(), "checkmarx"), CxScanBuilder.SCAN_REPORT_XML).isFile();
+    }
+
+    /**
+     * Loads the results index of this build, or null if the build has no stored SAST report.
+     */
+    @Nullable
+    public CxResultsIndex getResultsIndex() throws IOException {
+        return CxResultsIndex.load(new File(owner.getRootDir(), "checkmarx"));
+    }
+
+    /**
+     * JSON API: one page of findings, filtered by severity, query, group, file, status, falsePositive and
+     * suppressed (by the job's {@link CxBaseline baselines}).
+     */
+    public void doResults(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        CxResultsIndex index = getResultsIndex();
+        if (index == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND, "No SAST results stored for this build");
+            return;
+        }
+        CxResultsApi.writeResults(index, getBaseline(), req, rsp);
+    }
+
+    /**
+     * JSON API: finding counts grouped by query, severity or file.
+     */
+    public void doResultGroups(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        CxResultsIndex index = getResultsIndex();
+        if (index == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND, "No SAST results stored for this build");
+            return;
+        }
+        CxResultsApi.writeGroups(index, getBaseline(), req, rsp);
+    }
+
+    /**
+     * JSON API: findings diff against the build given by {@code base}, by default the previous build with
+     * Checkmarx results. Pages through the new or fixed findings like {@link #doResults}.
+     */
+    public void doDiff(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Run<?, ?> base;
+        String baseParam = req.getParameter("base");
+        if (baseParam == null) {
+            CxScanResult previous = getPreviousResult();
+            base = previous == null ? null : previous.owner;
+        } else {
+            try {
+                base = owner.getParent().getBuildByNumber(Integer.parseInt(baseParam.trim()));
+            } catch (NumberFormatException e) {
+                base = null;
             }
         }
+        if (base == null || base == owner) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND, "No base build to compare with");
+            return;
+        }
 
-        Collection<File> files = FileUtils.listFiles(cxBuildDirectory, null, false);
+        File targetDir = new File(owner.getRootDir(), "checkmarx");
+        File baseDir = new File(base.getRootDir(), "checkmarx");
+        CxResultsDiff diff = CxResultsDiff.load(targetDir, baseDir, base.getNumber());
+        CxResultsApi.writeDiff(diff, CxResultsIndex.load(targetDir), CxResultsIndex.load(baseDir), getBaseline(), req, rsp);
+    }
 
-        for (File f: files) {
-            if(htmlReportName.equals(f.getName())) {
-                htmlReport = FileUtils.readFileToString(f, Charset.defaultCharset());
-                return htmlReport;
+    /**
+     * Suppressions of the job and its folders.
+     */
+    public CxBaseline.Lookup getBaseline() throws IOException {
+        return CxBaseline.lookup(owner.getParent());
+    }
+
+    /**
+     * Suppresses the findings of this build in the baseline of the job, or of its folder with {@code scope=folder}:
+     * all of them, or only the false positives with {@code falsePositivesOnly=true}.
+     */
+    @RequirePOST
+    public void doImportBaseline(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Item target = baselineTarget(req);
+        CxResultsIndex index = getResultsIndex();
+        if (index == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND, "No SAST results stored for this build");
+            return;
+        }
+        int added;
+        try {
+            added = CxBaseline.importResults(target.getRootDir(), index, Boolean.parseBoolean(req.getParameter("falsePositivesOnly")),
+                    parseReason(req.getParameter("reason"), CxBaseline.Reason.BASELINE), Jenkins.getAuthentication().getName(),
+                    StringUtils.defaultString(req.getParameter("comment"), "Imported from " + owner.getFullDisplayName()));
+        } catch (IllegalArgumentException e) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        writeBaselineUpdate(rsp, target, added);
+    }
+
+    /**
+     * Suppresses ({@code suppress=true}, the default) or restores one finding given by its hex {@code fingerprint}.
+     */
+    @RequirePOST
+    public void doSuppress(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Item target = baselineTarget(req);
+        long fingerprint;
+        try {
+            fingerprint = new BigInteger(StringUtils.defaultString(req.getParameter("fingerprint")).trim(), 16).longValue();
+        } catch (NumberFormatException e) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid fingerprint");
+            return;
+        }
+        if (fingerprint == 0) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid fingerprint");
+            return;
+        }
+        int changed;
+        if (Boolean.parseBoolean(StringUtils.defaultIfEmpty(req.getParameter("suppress"), "true"))) {
+            try {
+                CxBaseline.suppress(target.getRootDir(), fingerprint, parseReason(req.getParameter("reason"), CxBaseline.Reason.RISK_ACCEPTED),
+                        Jenkins.getAuthentication().getName(), StringUtils.defaultString(req.getParameter("comment")));
+            } catch (IllegalArgumentException e) {
+                rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+                return;
             }
+            changed = 1;
+        } else {
+            changed = CxBaseline.unsuppress(target.getRootDir(), fingerprint) ? 1 : 0;
+        }
+        writeBaselineUpdate(rsp, target, changed);
+    }
+
+    private Item baselineTarget(StaplerRequest req) {
+        Item target = owner.getParent();
+        if ("folder".equals(req.getParameter("scope")) && owner.getParent().getParent() instanceof Item) {
+            target = (Item) owner.getParent().getParent();
         }
+        target.checkPermission(Item.CONFIGURE);
+        return target;
+    }
+
+    private static CxBaseline.Reason parseReason(String value, CxBaseline.Reason defaultReason) {
+        if (StringUtils.isBlank(value)) {
+            return defaultReason;
+        }
+        try {
+            return CxBaseline.Reason.valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            return defaultReason;
+        }
+    }
 
-        return "<h1>Checkmarx HTML report not found<h1>";
+    private static void writeBaselineUpdate(StaplerResponse rsp, Item target, int changed) throws IOException {
+        JsonGenerator json = CxResultsApi.startJson(rsp);
+        json.writeStartObject();
+        json.writeStringField("baseline", target.getFullName());
+        json.writeNumberField("changed", changed);
+        json.writeNumberField("size", CxBaseline.load(target.getRootDir()).size());
+        json.writeEndObject();
+        json.close();
     }
 
     /**
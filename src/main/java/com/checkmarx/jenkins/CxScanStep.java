@@ -0,0 +1,108 @@
+package com.checkmarx.jenkins;
+
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.jenkinsci.plugins.workflow.steps.SynchronousNonBlockingStepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Pipeline step running a Checkmarx scan configured like the build step, e.g.
+ * {@code def cx = checkmarxScan(scan: [projectName: 'app', serverUrl: '...', ...])}, and returning a
+ * {@link CxScanStepResult}.
+ * <p>
+ * The scan runs on a thread of its own, so the CPS thread of the pipeline is free while the step waits for the
+ * server. All state of the run lives in a {@link CxScanContext} of the execution, so concurrent builds can scan at
+ * the same time. Reports are stored in the {@code checkmarx} directory of the build, which one scan at a time can
+ * own: a scan started while another one of the same build is running, e.g. in a parallel branch, fails.
+ */
+public class CxScanStep extends Step {
+
+    /**
+     * Builds with a scan in progress, by {@link Run#getExternalizableId()}.
+     */
+    private static final Set<String> SCANNING = Collections.synchronizedSet(new HashSet<String>());
+
+    private final CxScanBuilder scan;
+
+    @DataBoundConstructor
+    public CxScanStep(CxScanBuilder scan) {
+        this.scan = scan;
+    }
+
+    public CxScanBuilder getScan() {
+        return scan;
+    }
+
+    @Override
+    public StepExecution start(StepContext context) throws Exception {
+        return new Execution(context, scan);
+    }
+
+    /**
+     * Runs the scan in the background and completes the step with its result. A scan cannot be taken over after a
+     * restart of the controller, so a resumed execution fails.
+     */
+    static final class Execution extends SynchronousNonBlockingStepExecution<CxScanStepResult> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient CxScanBuilder scan;
+
+        Execution(StepContext context, CxScanBuilder scan) {
+            super(context);
+            this.scan = scan;
+        }
+
+        @Override
+        protected CxScanStepResult run() throws Exception {
+            StepContext context = getContext();
+            Run<?, ?> run = context.get(Run.class);
+            String id = run.getExternalizableId();
+            if (!SCANNING.add(id)) {
+                throw new AbortException("Another Checkmarx scan of " + run.getFullDisplayName()
+                        + " is running; scans of one build cannot run in parallel since they share its reports");
+            }
+            try {
+                CxScanContext ctx = new CxScanContext(run, context.get(FilePath.class), context.get(TaskListener.class),
+                        scan.getLogLevel());
+                scan.perform(ctx);
+                return CxScanStepResult.of(ctx);
+            } finally {
+                SCANNING.remove(id);
+            }
+        }
+    }
+
+    @Extension(optional = true)
+    public static final class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return new HashSet<Class<?>>(Arrays.<Class<?>>asList(Run.class, FilePath.class, TaskListener.class));
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "checkmarxScan";
+        }
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return "Run a Checkmarx scan";
+        }
+    }
+}
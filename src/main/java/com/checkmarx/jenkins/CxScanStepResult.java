@@ -0,0 +1,162 @@
+package com.checkmarx.jenkins;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import hudson.model.Result;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Outcome of the {@code checkmarxScan} pipeline step: result counts, the reports stored with the build and the
+ * threshold status. Counts are -1 when the scan type was not run or its results are not available, e.g. in
+ * asynchronous mode.
+ */
+public final class CxScanStepResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = Logger.getLogger(CxScanStepResult.class.getName());
+
+    private static final String[] REPORT_FILES = {
+            CxScanBuilder.SCAN_REPORT_XML, CxScanResult.PDF_REPORT_NAME, CxScanBuilder.OSA_SUMMERY_JSON,
+            CxScanBuilder.OSA_LIBRARIES_JSON, CxScanBuilder.OSA_VULNERABILITIES_JSON, CxOsaLogSummary.FULL_LOG_FILE_NAME
+    };
+
+    private int highCount = -1;
+    private int mediumCount = -1;
+    private int lowCount = -1;
+    private int infoCount = -1;
+    private int osaHighCount = -1;
+    private int osaMediumCount = -1;
+    private int osaLowCount = -1;
+    private final List<String> reports = new ArrayList<String>();
+    private boolean thresholdExceeded;
+    private boolean newResultsThresholdExceeded;
+    private String policyViolation;
+    private String buildResult;
+
+    static CxScanStepResult of(CxScanContext ctx) {
+        CxScanStepResult ret = new CxScanStepResult();
+        if (ctx.scanResults != null && ctx.scanResults.getSastResults().isSastResultsReady()) {
+            ret.highCount = ctx.scanResults.getSastResults().getHigh();
+            ret.mediumCount = ctx.scanResults.getSastResults().getMedium();
+            ret.lowCount = ctx.scanResults.getSastResults().getLow();
+            ret.infoCount = ctx.scanResults.getSastResults().getInformation();
+        }
+        if (ctx.checkmarxBuildDir != null) {
+            readOsaSummary(new File(ctx.checkmarxBuildDir, CxScanBuilder.OSA_SUMMERY_JSON), ret);
+            String html = ctx.scanResult == null ? null : ctx.scanResult.getHtmlReportName();
+            if (html != null && new File(ctx.checkmarxBuildDir, html).isFile()) {
+                ret.reports.add("checkmarx/" + html);
+            }
+            for (String name : REPORT_FILES) {
+                if (new File(ctx.checkmarxBuildDir, name).isFile()) {
+                    ret.reports.add("checkmarx/" + name);
+                }
+            }
+        }
+        ret.thresholdExceeded = ctx.thresholdExceeded;
+        ret.newResultsThresholdExceeded = ctx.newResultsThresholdExceeded;
+        ret.policyViolation = ctx.policyViolation == null ? null : ctx.policyViolation.toString();
+        Result result = ctx.run.getResult();
+        ret.buildResult = result == null ? Result.SUCCESS.toString() : result.toString();
+        return ret;
+    }
+
+    private static void readOsaSummary(File summary, CxScanStepResult ret) {
+        if (!summary.isFile()) {
+            return;
+        }
+        try {
+            JsonNode node = CxJson.MAPPER.readTree(summary);
+            ret.osaHighCount = node.path("totalHighVulnerabilities").asInt(-1);
+            ret.osaMediumCount = node.path("totalMediumVulnerabilities").asInt(-1);
+            ret.osaLowCount = node.path("totalLowVulnerabilities").asInt(-1);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to read " + summary, e);
+        }
+    }
+
+    @Whitelisted
+    public int getHighCount() {
+        return highCount;
+    }
+
+    @Whitelisted
+    public int getMediumCount() {
+        return mediumCount;
+    }
+
+    @Whitelisted
+    public int getLowCount() {
+        return lowCount;
+    }
+
+    @Whitelisted
+    public int getInfoCount() {
+        return infoCount;
+    }
+
+    @Whitelisted
+    public int getOsaHighCount() {
+        return osaHighCount;
+    }
+
+    @Whitelisted
+    public int getOsaMediumCount() {
+        return osaMediumCount;
+    }
+
+    @Whitelisted
+    public int getOsaLowCount() {
+        return osaLowCount;
+    }
+
+    /**
+     * Reports stored with the build, relative to its directory.
+     */
+    @Whitelisted
+    public List<String> getReports() {
+        return Collections.unmodifiableList(reports);
+    }
+
+    @Whitelisted
+    public boolean isThresholdExceeded() {
+        return thresholdExceeded;
+    }
+
+    @Whitelisted
+    public boolean isNewResultsThresholdExceeded() {
+        return newResultsThresholdExceeded;
+    }
+
+    /**
+     * The failing rule of the threshold policy, or null.
+     */
+    @Whitelisted
+    public String getPolicyViolation() {
+        return policyViolation;
+    }
+
+    /**
+     * Build result once the step is over.
+     */
+    @Whitelisted
+    public String getBuildResult() {
+        return buildResult;
+    }
+
+    @Override
+    public String toString() {
+        return "CxScanStepResult[high=" + highCount + ", medium=" + mediumCount + ", low=" + lowCount
+                + ", osaHigh=" + osaHighCount + ", osaMedium=" + osaMediumCount + ", osaLow=" + osaLowCount
+                + ", thresholdExceeded=" + thresholdExceeded + ", buildResult=" + buildResult + "]";
+    }
+}
@@ -0,0 +1,265 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.dto.Team;
+import com.cx.restclient.sast.dto.CxNameObj;
+import com.cx.restclient.sast.dto.Preset;
+import com.cx.restclient.sast.dto.Project;
+import jenkins.util.Timer;
+import org.apache.commons.lang.StringUtils;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller side cache of the lists the job configuration form reads from the Checkmarx server (projects,
+ * presets, configuration sets and teams), keyed by server URL, username, password hash and certificate mode.
+ * <p>
+ * All four lists are fetched together with one login. Concurrent requests for the same server share a
+ * single load. Entries older than the refresh interval are still served while a background refresh runs;
+ * only entries older than the expiry interval make a request wait for the server again. Failed loads are not
+ * cached.
+ */
+public final class CxServerMetadataCache {
+
+    private static final Logger LOGGER = Logger.getLogger(CxServerMetadataCache.class.getName());
+
+    private static final long REFRESH_MILLIS = Long.getLong(CxServerMetadataCache.class.getName() + ".refreshSeconds", 300) * 1000;
+    private static final long EXPIRE_MILLIS = Long.getLong(CxServerMetadataCache.class.getName() + ".expireSeconds", 3600) * 1000;
+    private static final int MAX_ENTRIES = 64;
+
+    private static final CxServerMetadataCache INSTANCE = new CxServerMetadataCache();
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private CxServerMetadataCache() {
+    }
+
+    public static CxServerMetadataCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Server lists of one Checkmarx account.
+     */
+    public static final class Metadata {
+        private final List<Project> projects;
+        private final List<Preset> presets;
+        private final List<CxNameObj> configurationSets;
+        private final List<Team> teams;
+        private volatile String[][] projectNameIndex;
+
+        public Metadata(List<Project> projects, List<Preset> presets, List<CxNameObj> configurationSets, List<Team> teams) {
+            this.projects = Collections.unmodifiableList(projects);
+            this.presets = Collections.unmodifiableList(presets);
+            this.configurationSets = Collections.unmodifiableList(configurationSets);
+            this.teams = Collections.unmodifiableList(teams);
+        }
+
+        public List<Project> getProjects() {
+            return projects;
+        }
+
+        public List<Preset> getPresets() {
+            return presets;
+        }
+
+        public List<CxNameObj> getConfigurationSets() {
+            return configurationSets;
+        }
+
+        public List<Team> getTeams() {
+            return teams;
+        }
+
+        /**
+         * Returns up to {@code limit} project names starting with {@code prefix} (case insensitive), in
+         * alphabetical order. Uses a sorted name index built on first use, so each lookup is a binary search.
+         */
+        public List<String> findProjectNames(String prefix, int limit) {
+            String[][] index = getProjectNameIndex();
+            String[] keys = index[0];
+            String[] names = index[1];
+            String key = StringUtils.defaultString(prefix).trim().toLowerCase(Locale.ENGLISH);
+
+            int i = Arrays.binarySearch(keys, key);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            List<String> ret = new ArrayList<String>(Math.min(limit, 32));
+            for (; i < keys.length && ret.size() < limit && keys[i].startsWith(key); i++) {
+                ret.add(names[i]);
+            }
+            return ret;
+        }
+
+        private String[][] getProjectNameIndex() {
+            String[][] index = projectNameIndex;
+            if (index == null) {
+                TreeMap<String, String> sorted = new TreeMap<String, String>();
+                for (Project p : projects) {
+                    if (p.getName() != null) {
+                        sorted.put(p.getName().toLowerCase(Locale.ENGLISH), p.getName());
+                    }
+                }
+                index = new String[][]{
+                        sorted.keySet().toArray(new String[sorted.size()]),
+                        sorted.values().toArray(new String[sorted.size()])
+                };
+                projectNameIndex = index;
+            }
+            return index;
+        }
+    }
+
+    private static final class Entry {
+        private final Callable<Metadata> loader;
+        private final FutureTask<Metadata> initial;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile Metadata value;
+        private volatile long loadedAt;
+
+        Entry(Callable<Metadata> loader) {
+            this.loader = loader;
+            this.initial = new FutureTask<Metadata>(loader);
+        }
+    }
+
+    /**
+     * Returns the metadata of the given account, loading it with {@code loader} if it is not cached or expired.
+     */
+    public Metadata getMetadata(CxCredentials credentials, boolean disableCertificateValidation, Callable<Metadata> loader) throws Exception {
+        String key = key(credentials, disableCertificateValidation);
+        while (true) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(loader);
+                Entry existing = entries.putIfAbsent(key, entry);
+                if (existing == null) {
+                    CxMetrics.get().recordFormCacheLookup(false);
+                    evictIfFull();
+                    return loadInitial(key, entry);
+                }
+                entry = existing;
+            }
+
+            Metadata value = entry.value;
+            if (value == null) {
+                // someone else's initial load is in flight, wait for it
+                CxMetrics.get().recordFormCacheLookup(true);
+                return loadInitial(key, entry);
+            }
+
+            long age = System.currentTimeMillis() - entry.loadedAt;
+            if (age < REFRESH_MILLIS) {
+                CxMetrics.get().recordFormCacheLookup(true);
+                return value;
+            }
+            if (age < EXPIRE_MILLIS) {
+                CxMetrics.get().recordFormCacheLookup(true);
+                refreshInBackground(key, entry);
+                return value;
+            }
+            // too old to be served, start over
+            entries.remove(key, entry);
+        }
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    private Metadata loadInitial(String key, Entry entry) throws Exception {
+        entry.initial.run(); // no-op unless this is the first caller
+        try {
+            Metadata value = entry.initial.get();
+            if (entry.value == null) {
+                entry.loadedAt = System.currentTimeMillis();
+                entry.value = value;
+            }
+            return value;
+        } catch (ExecutionException e) {
+            entries.remove(key, entry);
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    private void refreshInBackground(final String key, final Entry entry) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        Timer.get().submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    entry.value = entry.loader.call();
+                    entry.loadedAt = System.currentTimeMillis();
+                } catch (Exception e) {
+                    // keep serving the previous lists until they expire
+                    LOGGER.log(Level.FINE, "Failed to refresh Checkmarx server metadata", e);
+                } finally {
+                    entry.refreshing.set(false);
+                }
+            }
+        });
+    }
+
+    private void evictIfFull() {
+        if (entries.size() <= MAX_ENTRIES) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        String oldestKey = null;
+        long oldest = Long.MAX_VALUE;
+        for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Entry> e = it.next();
+            Entry entry = e.getValue();
+            if (entry.value != null && now - entry.loadedAt >= EXPIRE_MILLIS) {
+                it.remove();
+            } else if (entry.value != null && entry.loadedAt < oldest) {
+                oldest = entry.loadedAt;
+                oldestKey = e.getKey();
+            }
+        }
+        if (entries.size() > MAX_ENTRIES && oldestKey != null) {
+            entries.remove(oldestKey);
+        }
+    }
+
+    private static String key(CxCredentials credentials, boolean disableCertificateValidation) {
+        return StringUtils.defaultString(credentials.getServerUrl()).trim() + '\u0000'
+                + StringUtils.defaultString(credentials.getUsername()) + '\u0000'
+                + sha256(StringUtils.defaultString(credentials.getPassword())) + '\u0000'
+                + disableCertificateValidation;
+    }
+
+    static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(Charset.forName("UTF-8")));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
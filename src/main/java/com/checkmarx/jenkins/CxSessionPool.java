@@ -0,0 +1,225 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.CxShragaClient;
+import com.cx.restclient.exception.CxTokenExpiredException;
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of logged in {@link CxShragaClient} sessions on the controller, keyed by server URL, username,
+ * password hash and certificate mode.
+ * <p>
+ * Sessions are borrowed for one operation and returned afterwards, so their token and HTTP connections are
+ * reused by the next caller. A session is logged in again before its token gets old, and once more when the
+ * server still reports an expired token. Idle sessions are dropped after a while and their number is capped; a
+ * session leaving the pool has its client closed, which releases its HTTP connections.
+ */
+public final class CxSessionPool {
+
+    private static final Logger LOGGER = Logger.getLogger(CxSessionPool.class.getName());
+
+    private static final long RELOGIN_MILLIS = Long.getLong(CxSessionPool.class.getName() + ".reloginSeconds", 45 * 60) * 1000;
+    private static final long IDLE_MILLIS = Long.getLong(CxSessionPool.class.getName() + ".idleSeconds", 10 * 60) * 1000;
+    private static final int MAX_IDLE_PER_KEY = Integer.getInteger(CxSessionPool.class.getName() + ".maxIdlePerKey", 4);
+    private static final int MAX_IDLE = Integer.getInteger(CxSessionPool.class.getName() + ".maxIdle", 32);
+
+    private static final CxSessionPool INSTANCE = new CxSessionPool();
+
+    private final Map<String, Deque<Session>> idle = new HashMap<String, Deque<Session>>();
+    private int idleCount;
+
+    private CxSessionPool() {
+    }
+
+    public static CxSessionPool get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Work done with a borrowed session.
+     */
+    public interface Operation<T> {
+        T run(CxShragaClient client) throws Exception;
+    }
+
+    private static final class Session {
+        private final CxShragaClient client;
+        private long loggedInAt;
+        private long returnedAt;
+
+        Session(CxShragaClient client) {
+            this.client = client;
+            this.loggedInAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Runs the operation with a pooled session of the given account. {@code factory} creates and logs in a new
+     * client when no idle session is available.
+     */
+    public <T> T execute(CxCredentials credentials, boolean disableCertificateValidation,
+                         Callable<CxShragaClient> factory, Operation<T> operation) throws Exception {
+        String key = key(credentials, disableCertificateValidation);
+        Session session = borrow(key);
+        if (session == null) {
+            session = new Session(factory.call());
+        }
+
+        T ret;
+        try {
+            if (System.currentTimeMillis() - session.loggedInAt > RELOGIN_MILLIS) {
+                relogin(session);
+            }
+            try {
+                ret = operation.run(session.client);
+            } catch (CxTokenExpiredException e) {
+                relogin(session);
+                ret = operation.run(session.client);
+            }
+        } catch (Exception e) {
+            // failed sessions are not returned, the next caller starts from a fresh login
+            close(session);
+            throw e;
+        }
+        close(giveBack(key, session));
+        return ret;
+    }
+
+    public void clear() {
+        List<Session> dropped = new ArrayList<Session>();
+        synchronized (this) {
+            for (Deque<Session> sessions : idle.values()) {
+                dropped.addAll(sessions);
+            }
+            idle.clear();
+            idleCount = 0;
+        }
+        close(dropped);
+    }
+
+    private static void relogin(Session session) throws Exception {
+        long start = System.currentTimeMillis();
+        CxMetrics.get().recordServerRequests(1);
+        session.client.login();
+        session.loggedInAt = System.currentTimeMillis();
+        CxMetrics.get().recordLogin(session.loggedInAt - start);
+    }
+
+    private synchronized Session borrow(String key) {
+        Deque<Session> sessions = idle.get(key);
+        if (sessions == null || sessions.isEmpty()) {
+            return null;
+        }
+        idleCount--;
+        // most recently used first, keeps the rest of the deque aging out
+        return sessions.pollFirst();
+    }
+
+    /**
+     * Returns the session to the pool.
+     *
+     * @return the session dropped to make room, to be closed by the caller, or null
+     */
+    private synchronized Session giveBack(String key, Session session) {
+        Deque<Session> sessions = idle.get(key);
+        if (sessions == null) {
+            sessions = new ArrayDeque<Session>();
+            idle.put(key, sessions);
+        }
+        if (sessions.size() >= MAX_IDLE_PER_KEY) {
+            return session;
+        }
+        session.returnedAt = System.currentTimeMillis();
+        sessions.addFirst(session);
+        idleCount++;
+        return idleCount > MAX_IDLE ? evictOldest() : null;
+    }
+
+    /**
+     * Drops and closes sessions idle for longer than {@code maxIdleMillis}.
+     */
+    void evict(long maxIdleMillis) {
+        List<Session> dropped = new ArrayList<Session>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (Iterator<Deque<Session>> it = idle.values().iterator(); it.hasNext(); ) {
+                Deque<Session> sessions = it.next();
+                while (!sessions.isEmpty() && now - sessions.peekLast().returnedAt > maxIdleMillis) {
+                    dropped.add(sessions.pollLast());
+                    idleCount--;
+                }
+                if (sessions.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+        close(dropped);
+    }
+
+    private Session evictOldest() {
+        Deque<Session> oldest = null;
+        for (Deque<Session> sessions : idle.values()) {
+            if (!sessions.isEmpty() && (oldest == null || sessions.peekLast().returnedAt < oldest.peekLast().returnedAt)) {
+                oldest = sessions;
+            }
+        }
+        if (oldest == null) {
+            return null;
+        }
+        idleCount--;
+        return oldest.pollLast();
+    }
+
+    private static void close(List<Session> sessions) {
+        for (Session session : sessions) {
+            close(session);
+        }
+    }
+
+    private static void close(Session session) {
+        if (session == null) {
+            return;
+        }
+        try {
+            session.client.close();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINE, "Failed to close a Checkmarx session", e);
+        }
+    }
+
+    private static String key(CxCredentials credentials, boolean disableCertificateValidation) {
+        return StringUtils.defaultString(credentials.getServerUrl()).trim() + '\u0000'
+                + StringUtils.defaultString(credentials.getUsername()) + '\u0000'
+                + CxServerMetadataCache.sha256(StringUtils.defaultString(credentials.getPassword())) + '\u0000'
+                + disableCertificateValidation;
+    }
+
+    /**
+     * Drops idle sessions once a minute.
+     */
+    @Extension
+    public static class IdleSessionReaper extends PeriodicWork {
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(1);
+        }
+
+        @Override
+        protected void doRun() {
+            get().evict(IDLE_MILLIS);
+        }
+    }
+}
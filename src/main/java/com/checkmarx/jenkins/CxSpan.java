@@ -0,0 +1,149 @@
+package com.checkmarx.jenkins;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * One timed operation of a Checkmarx build step, with OpenTelemetry style trace and span ids. Spans are
+ * collected by their {@link CxTrace} when they end and exported with it by {@link CxTraceExporter}.
+ */
+public final class CxSpan implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String traceId;
+    private final String spanId;
+    private final String parentSpanId;
+    private final String name;
+    private final long startMillis;
+    private long endMillis;
+    private final Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+    private String errorMessage;
+    private transient CxTrace trace;
+
+    CxSpan(CxTrace trace, String name, String parentSpanId, long startMillis) {
+        this.trace = trace;
+        this.traceId = trace.getTraceId();
+        this.spanId = newId(8);
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * Ids of a span, passed to agents so their spans join the controller's trace.
+     */
+    public static final class Context implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String traceId;
+        private final String spanId;
+
+        Context(String traceId, String spanId) {
+            this.traceId = traceId;
+            this.spanId = spanId;
+        }
+
+        public String getTraceId() {
+            return traceId;
+        }
+
+        public String getSpanId() {
+            return spanId;
+        }
+    }
+
+    public CxSpan child(String name) {
+        return child(name, System.currentTimeMillis());
+    }
+
+    public CxSpan child(String name, long startMillis) {
+        return new CxSpan(trace, name, spanId, startMillis);
+    }
+
+    /**
+     * Starts a child span for a {@link CxPhaseTimings} phase that started at {@code startMillis}, named after the
+     * phase key.
+     */
+    public CxSpan phase(String key, String displayName, long startMillis) {
+        return child("checkmarx." + key.toLowerCase(Locale.ENGLISH), startMillis).setAttribute("checkmarx.phase", displayName);
+    }
+
+    public CxSpan setAttribute(String key, Object value) {
+        if (value != null) {
+            attributes.put(key, value);
+        }
+        return this;
+    }
+
+    public CxSpan fail(Throwable t) {
+        errorMessage = t.getClass().getName() + ": " + t.getMessage();
+        return this;
+    }
+
+    /**
+     * Ends the span now and hands it to its trace. Ending a span more than once has no effect.
+     */
+    public void end() {
+        if (endMillis == 0) {
+            endMillis = System.currentTimeMillis();
+            trace.finished(this);
+        }
+    }
+
+    CxTrace getTrace() {
+        return trace;
+    }
+
+    public Context getContext() {
+        return new Context(traceId, spanId);
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public long getEndMillis() {
+        return endMillis;
+    }
+
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * Random lower case hex id of {@code bytes} bytes.
+     */
+    static String newId(int bytes) {
+        StringBuilder sb = new StringBuilder(bytes * 2);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < bytes; i++) {
+            int b = random.nextInt(256);
+            sb.append(Character.forDigit(b >> 4, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,44 @@
+package com.checkmarx.jenkins;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that spreads concurrent updates over several cells, in the manner of Java 8's {@code LongAdder}, so
+ * threads recording at the same time rarely touch the same cache line. Reading sums all cells and is only
+ * meant for the occasional scrape.
+ */
+final class CxStripedCounter {
+
+    // one cell per 64 byte cache line
+    private static final int PADDING = 8;
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    void increment() {
+        add(1);
+    }
+
+    void add(long delta) {
+        cells.getAndAdd(index(), delta);
+    }
+
+    long sum() {
+        long ret = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            ret += cells.get(i * PADDING);
+        }
+        return ret;
+    }
+
+    private static int index() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((h >>> 16) & (STRIPES - 1)) * PADDING;
+    }
+
+    private static int stripes() {
+        int n = Math.min(Runtime.getRuntime().availableProcessors(), 64);
+        return Integer.highestOneBit(Math.max(n, 1) * 2 - 1);
+    }
+}
@@ -0,0 +1,629 @@
+package com.checkmarx.jenkins;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Pattern;
+
+/**
+ * Threshold policy of a job: a list of rules evaluated against the stored results of a build, one rule per line.
+ * <pre>
+ * # source [filter...] &gt; limit
+ * sast severity=high &gt; 0
+ * sast query=SQL_Injection,Stored_XSS &gt; 0
+ * sast cwe=79 path=src/main/webapp/** &gt; 5
+ * sast severity=medium &gt; previous+10
+ * sast.new severity=high,medium &gt; 0
+ * osa cvss&gt;=9 &gt; 0
+ * osa.libraries age&gt;=730 &gt; 20
+ * </pre>
+ * A rule fails when the number of matching findings exceeds its limit. {@code previous} limits are the count of
+ * the same rule in the previous build with results, and {@code sast.new} only counts results missing from that
+ * build. False positives and findings suppressed by a {@link CxBaseline} are never counted.
+ * <p>
+ * Policies are compiled once per text ({@link #get}). Evaluation resolves the query and path filters of every
+ * rule to flag arrays over the dictionaries of the {@link CxResultsIndex}, then counts all rules in one pass over
+ * the result columns, stopping at the first rule over its limit.
+ */
+public final class CxThresholdPolicy {
+
+    static final int SAST = 0;
+    static final int SAST_NEW = 1;
+    static final int OSA = 2;
+    static final int OSA_LIBRARIES = 3;
+
+    private static final String[] SOURCES = {"sast", "sast.new", "osa", "osa.libraries"};
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final int MAX_COMPILED = 64;
+
+    private static final Map<String, CxThresholdPolicy> COMPILED = new LinkedHashMap<String, CxThresholdPolicy>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CxThresholdPolicy> eldest) {
+            return size() > MAX_COMPILED;
+        }
+    };
+
+    private final Rule[] rules;
+    private final boolean needsPrevious;
+    private final boolean needsOsa;
+
+    private CxThresholdPolicy(Rule[] rules) {
+        this.rules = rules;
+        boolean previous = false;
+        boolean osa = false;
+        for (Rule r : rules) {
+            previous |= r.relative || r.source == SAST_NEW;
+            osa |= r.source == OSA || r.source == OSA_LIBRARIES;
+        }
+        this.needsPrevious = previous;
+        this.needsOsa = osa;
+    }
+
+    /**
+     * Returns the compiled policy of the given text, compiling it on first use.
+     *
+     * @throws IllegalArgumentException if the policy does not parse; the message names the line
+     */
+    public static CxThresholdPolicy get(String text) {
+        synchronized (COMPILED) {
+            CxThresholdPolicy cached = COMPILED.get(text);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        CxThresholdPolicy policy = compile(text);
+        synchronized (COMPILED) {
+            COMPILED.put(text, policy);
+        }
+        return policy;
+    }
+
+    public boolean isEmpty() {
+        return rules.length == 0;
+    }
+
+    /**
+     * Whether some rule needs the results of the previous build.
+     */
+    public boolean needsPrevious() {
+        return needsPrevious;
+    }
+
+    /**
+     * A rule that exceeded its limit.
+     */
+    public static final class Violation {
+        private final int line;
+        private final String rule;
+        private final long count;
+        private final long limit;
+
+        Violation(Rule rule, long count, long limit) {
+            this.line = rule.line;
+            this.rule = rule.text;
+            this.count = count;
+            this.limit = limit;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getRule() {
+            return rule;
+        }
+
+        /**
+         * Matching findings counted until the rule failed; at least {@code limit + 1}.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        public long getLimit() {
+            return limit;
+        }
+
+        @Override
+        public String toString() {
+            return "Threshold policy rule at line " + line + " failed: [" + rule + "] found more than " + limit
+                    + " matching findings (" + count + ")";
+        }
+    }
+
+    /**
+     * Evaluates the policy against the stored reports of a build.
+     *
+     * @param checkmarxBuildDir         checkmarx directory of the build
+     * @param previousCheckmarxBuildDir checkmarx directory of the previous build with results, or null
+     * @param baseline                  suppressed findings
+     * @param now                       reference time for library ages
+     * @return the first rule over its limit, or null if the policy passes
+     */
+    public Violation evaluate(File checkmarxBuildDir, File previousCheckmarxBuildDir, CxBaseline.Lookup baseline, long now) throws IOException {
+        Results current = loadResults(checkmarxBuildDir, true);
+        Results previous = needsPrevious && previousCheckmarxBuildDir != null
+                ? loadResults(previousCheckmarxBuildDir, true) : null;
+        return evaluate(current, previous, baseline, now);
+    }
+
+    /**
+     * Loads the stored results of a build this policy reads.
+     *
+     * @param cached whether the SAST index goes through the cache of loaded indexes
+     */
+    Results loadResults(File checkmarxBuildDir, boolean cached) throws IOException {
+        return Results.load(checkmarxBuildDir, needsOsa, cached);
+    }
+
+    Violation evaluate(Results current, Results previous, CxBaseline.Lookup baseline, long now) {
+        long[] limits = new long[rules.length];
+        for (int i = 0; i < rules.length; i++) {
+            Rule r = rules[i];
+            if (!r.relative) {
+                limits[i] = r.limit;
+            } else if (previous == null) {
+                limits[i] = Long.MAX_VALUE; // nothing to compare with
+            } else {
+                long base = count(r, previous, baseline, Long.MAX_VALUE, now);
+                limits[i] = base > Long.MAX_VALUE - r.limit ? Long.MAX_VALUE : base + r.limit;
+            }
+        }
+
+        Violation ret = evaluateSast(current, previous, baseline, limits);
+        if (ret == null) {
+            ret = evaluateOsa(current, baseline, limits, now);
+        }
+        return ret;
+    }
+
+    /**
+     * Counts all SAST rules in one pass over the index.
+     */
+    private Violation evaluateSast(Results current, Results previous, CxBaseline.Lookup baseline, long[] limits) {
+        CxResultsIndex index = current.index;
+        int n = 0;
+        int[] ids = new int[rules.length];
+        for (int i = 0; i < rules.length; i++) {
+            if ((rules[i].source == SAST || rules[i].source == SAST_NEW) && limits[i] != Long.MAX_VALUE) {
+                ids[n++] = i;
+            }
+        }
+        if (n == 0 || index == null) {
+            return null;
+        }
+
+        boolean[][] queries = new boolean[n][];
+        boolean[][] files = new boolean[n][];
+        int[] severities = new int[n];
+        boolean[] onlyNew = new boolean[n];
+        long[] ruleLimits = new long[n];
+        CxFingerprintMap baseCounts = null;
+        for (int k = 0; k < n; k++) {
+            Rule r = rules[ids[k]];
+            queries[k] = r.resolveQueries(index);
+            files[k] = r.resolveFiles(index);
+            severities[k] = r.severities;
+            onlyNew[k] = r.source == SAST_NEW;
+            ruleLimits[k] = limits[ids[k]];
+            if (onlyNew[k] && baseCounts == null) {
+                baseCounts = countFingerprints(previous == null ? null : previous.index);
+            }
+        }
+
+        long[] counts = new long[n];
+        int size = index.size();
+        boolean suppressions = !baseline.isEmpty();
+        for (int row = 0; row < size; row++) {
+            if ((index.flags[row] & CxResultsIndex.FLAG_FALSE_POSITIVE) != 0
+                    || (suppressions && baseline.isSuppressed(index.fingerprint[row]))) {
+                continue;
+            }
+            int q = index.query[row];
+            int f = index.file[row];
+            int severity = 1 << index.severity[row];
+            int isNew = -1;
+            for (int k = 0; k < n; k++) {
+                if ((severities[k] & severity) == 0
+                        || (queries[k] != null && !queries[k][q])
+                        || (files[k] != null && (f < 0 || !files[k][f]))) {
+                    continue;
+                }
+                if (onlyNew[k]) {
+                    if (isNew < 0) {
+                        isNew = isNew(baseCounts, index.fingerprint[row]) ? 1 : 0;
+                    }
+                    if (isNew == 0) {
+                        continue;
+                    }
+                }
+                if (++counts[k] > ruleLimits[k]) {
+                    return new Violation(rules[ids[k]], counts[k], ruleLimits[k]);
+                }
+            }
+        }
+        return null;
+    }
+
+    private Violation evaluateOsa(Results current, CxBaseline.Lookup baseline, long[] limits, long now) {
+        for (int i = 0; i < rules.length; i++) {
+            Rule r = rules[i];
+            if ((r.source == OSA || r.source == OSA_LIBRARIES) && limits[i] != Long.MAX_VALUE) {
+                long count = count(r, current, baseline, limits[i], now);
+                if (count > limits[i]) {
+                    return new Violation(r, count, limits[i]);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Counts the findings of one rule, stopping once {@code stop} is exceeded. Used for OSA rules and for the
+     * baselines of {@code previous} limits.
+     */
+    private static long count(Rule r, Results results, CxBaseline.Lookup baseline, long stop, long now) {
+        long count = 0;
+        switch (r.source) {
+            case SAST:
+            case SAST_NEW: {
+                // the baseline of a new results rule is the total of the previous build
+                CxResultsIndex index = results.index;
+                if (index == null) {
+                    return 0;
+                }
+                boolean[] queries = r.resolveQueries(index);
+                boolean[] files = r.resolveFiles(index);
+                for (int row = 0; row < index.size() && count <= stop; row++) {
+                    int f = index.file[row];
+                    if ((index.flags[row] & CxResultsIndex.FLAG_FALSE_POSITIVE) == 0
+                            && !baseline.isSuppressed(index.fingerprint[row])
+                            && (r.severities & (1 << index.severity[row])) != 0
+                            && (queries == null || queries[index.query[row]])
+                            && (files == null || (f >= 0 && files[f]))) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+            case OSA:
+                for (int i = 0; i < results.cveSeverity.length && count <= stop; i++) {
+                    if ((r.severities & (1 << results.cveSeverity[i])) != 0
+                            && (Double.isNaN(r.minCvss) || results.cveScore[i] >= r.minCvss)) {
+                        count++;
+                    }
+                }
+                return count;
+            default:
+                for (int i = 0; i < results.libraryReleased.length && count <= stop; i++) {
+                    long released = results.libraryReleased[i];
+                    if (r.minAgeMillis < 0 || (released > 0 && now - released >= r.minAgeMillis)) {
+                        count++;
+                    }
+                }
+                return count;
+        }
+    }
+
+    private static CxFingerprintMap countFingerprints(CxResultsIndex index) {
+        int size = index == null ? 0 : index.size();
+        CxFingerprintMap counts = new CxFingerprintMap(size);
+        for (int row = 0; row < size; row++) {
+            counts.add(index.getFingerprint(row), 1);
+        }
+        return counts;
+    }
+
+    /**
+     * Matches results one to one against the previous build, like {@link CxResultsDiff}.
+     */
+    private static boolean isNew(CxFingerprintMap baseCounts, long fingerprint) {
+        if (baseCounts.get(fingerprint, 0) > 0) {
+            baseCounts.add(fingerprint, -1);
+            return false;
+        }
+        return true;
+    }
+
+    //--- compilation ---
+
+    static final class Rule {
+        final int line;
+        final String text;
+        final int source;
+        long limit;
+        boolean relative;
+        int severities = (1 << CxResultSeverity.values().length) - 1;
+        String[] queryNames;
+        int[] cweIds;
+        Pattern path;
+        double minCvss = Double.NaN;
+        long minAgeMillis = -1;
+
+        Rule(int line, String text, int source) {
+            this.line = line;
+            this.text = text;
+            this.source = source;
+        }
+
+        /**
+         * Flags per query of the index, or null when the rule has no query filter.
+         */
+        boolean[] resolveQueries(CxResultsIndex index) {
+            if (queryNames == null && cweIds == null) {
+                return null;
+            }
+            boolean[] ret = new boolean[index.queryCount()];
+            for (int q = 0; q < ret.length; q++) {
+                ret[q] = (queryNames == null || contains(queryNames, index.getString(index.queryName[q])))
+                        && (cweIds == null || contains(cweIds, index.queryCweId[q]));
+            }
+            return ret;
+        }
+
+        /**
+         * Flags per string of the index, or null when the rule has no path filter.
+         */
+        boolean[] resolveFiles(CxResultsIndex index) {
+            if (path == null) {
+                return null;
+            }
+            boolean[] ret = new boolean[index.strings.length];
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = path.matcher(index.strings[i].replace('\\', '/')).matches();
+            }
+            return ret;
+        }
+
+        private static boolean contains(String[] names, String name) {
+            for (String n : names) {
+                if (n.equalsIgnoreCase(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean contains(int[] ids, int id) {
+            for (int i : ids) {
+                if (i == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Parses a policy.
+     *
+     * @throws IllegalArgumentException if the policy does not parse; the message names the line
+     */
+    static CxThresholdPolicy compile(String text) {
+        List<Rule> rules = new ArrayList<Rule>();
+        String[] lines = text == null ? new String[0] : text.split("\\r?\\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (!line.isEmpty()) {
+                try {
+                    rules.add(parseRule(i + 1, line));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return new CxThresholdPolicy(rules.toArray(new Rule[rules.size()]));
+    }
+
+    private static Rule parseRule(int lineNumber, String line) {
+        String[] tokens = line.split("\\s+");
+        if (tokens.length < 3 || !">".equals(tokens[tokens.length - 2])) {
+            throw new IllegalArgumentException("expected 'source [filter...] > limit'");
+        }
+        int source = Arrays.asList(SOURCES).indexOf(tokens[0].toLowerCase(Locale.ENGLISH));
+        if (source < 0) {
+            throw new IllegalArgumentException("unknown source '" + tokens[0] + "', expected one of " + Arrays.toString(SOURCES));
+        }
+        Rule rule = new Rule(lineNumber, line, source);
+        for (int i = 1; i < tokens.length - 2; i++) {
+            parseFilter(rule, tokens[i]);
+        }
+        parseLimit(rule, tokens[tokens.length - 1]);
+        return rule;
+    }
+
+    private static void parseFilter(Rule rule, String token) {
+        boolean sast = rule.source == SAST || rule.source == SAST_NEW;
+        int ge = token.indexOf(">=");
+        int eq = token.indexOf('=');
+        if (ge > 0) {
+            String key = token.substring(0, ge).toLowerCase(Locale.ENGLISH);
+            String value = token.substring(ge + 2);
+            if ("cvss".equals(key) && rule.source == OSA) {
+                rule.minCvss = parseNumber(value, key);
+            } else if ("age".equals(key) && rule.source == OSA_LIBRARIES) {
+                rule.minAgeMillis = (long) (parseNumber(value, key) * DAY_MILLIS);
+            } else {
+                throw new IllegalArgumentException("filter '" + key + ">=' is not supported for " + SOURCES[rule.source]);
+            }
+            return;
+        }
+        if (eq <= 0) {
+            throw new IllegalArgumentException("expected a filter like 'key=value', got '" + token + "'");
+        }
+        String key = token.substring(0, eq).toLowerCase(Locale.ENGLISH);
+        String[] values = token.substring(eq + 1).split(",");
+        if ("severity".equals(key) && rule.source != OSA_LIBRARIES) {
+            rule.severities = 0;
+            for (String v : values) {
+                try {
+                    rule.severities |= 1 << CxResultSeverity.valueOf(v.trim().toUpperCase(Locale.ENGLISH)).ordinal();
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("unknown severity '" + v + "'");
+                }
+            }
+        } else if ("query".equals(key) && sast) {
+            rule.queryNames = values;
+        } else if ("cwe".equals(key) && sast) {
+            rule.cweIds = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                rule.cweIds[i] = (int) parseNumber(values[i], key);
+            }
+        } else if ("path".equals(key) && sast) {
+            rule.path = glob(token.substring(eq + 1));
+        } else {
+            throw new IllegalArgumentException("filter '" + key + "' is not supported for " + SOURCES[rule.source]);
+        }
+    }
+
+    private static void parseLimit(Rule rule, String token) {
+        String value = token.toLowerCase(Locale.ENGLISH);
+        if (value.startsWith("previous")) {
+            rule.relative = true;
+            value = value.substring("previous".length());
+            if (value.isEmpty()) {
+                return;
+            }
+            if (value.charAt(0) != '+') {
+                throw new IllegalArgumentException("expected 'previous' or 'previous+N', got '" + token + "'");
+            }
+            value = value.substring(1);
+        }
+        try {
+            rule.limit = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid limit '" + token + "'");
+        }
+        if (rule.limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative");
+        }
+    }
+
+    private static double parseNumber(String value, String key) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid " + key + " '" + value + "'");
+        }
+    }
+
+    /**
+     * Converts a path glob to a case insensitive pattern: {@code **} matches across directories, {@code *} and
+     * {@code ?} within one.
+     */
+    static Pattern glob(String glob) {
+        StringBuilder sb = new StringBuilder();
+        String g = glob.replace('\\', '/');
+        for (int i = 0; i < g.length(); i++) {
+            char c = g.charAt(i);
+            if (c == '*') {
+                if (i + 1 < g.length() && g.charAt(i + 1) == '*') {
+                    sb.append(".*");
+                    i++;
+                } else {
+                    sb.append("[^/]*");
+                }
+            } else if (c == '?') {
+                sb.append("[^/]");
+            } else {
+                sb.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(sb.toString(), Pattern.CASE_INSENSITIVE);
+    }
+
+    //--- stored results ---
+
+    /**
+     * The columns of a build's stored results that rules count over.
+     */
+    static final class Results {
+        final CxResultsIndex index;
+        final byte[] cveSeverity;
+        final double[] cveScore;
+        final long[] libraryReleased;
+
+        Results(CxResultsIndex index, byte[] cveSeverity, double[] cveScore, long[] libraryReleased) {
+            this.index = index;
+            this.cveSeverity = cveSeverity;
+            this.cveScore = cveScore;
+            this.libraryReleased = libraryReleased;
+        }
+
+        static Results load(File checkmarxBuildDir, boolean withOsa, boolean cached) throws IOException {
+            CxResultsIndex index = cached ? CxResultsIndex.load(checkmarxBuildDir) : CxResultsIndex.loadUncached(checkmarxBuildDir);
+            if (!withOsa) {
+                return new Results(index, new byte[0], new double[0], new long[0]);
+            }
+
+            List<JsonNode> cves = readArray(new File(checkmarxBuildDir, CxScanBuilder.OSA_VULNERABILITIES_JSON));
+            byte[] severity = new byte[cves.size()];
+            double[] score = new double[cves.size()];
+            for (int i = 0; i < severity.length; i++) {
+                JsonNode cve = cves.get(i);
+                JsonNode s = cve.path("severity");
+                severity[i] = (byte) severity(s.isObject() ? s.path("name").asText("") : s.asText(""));
+                score[i] = cve.path("score").asDouble(0);
+            }
+
+            List<JsonNode> libraries = readArray(new File(checkmarxBuildDir, CxScanBuilder.OSA_LIBRARIES_JSON));
+            long[] released = new long[libraries.size()];
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            for (int i = 0; i < released.length; i++) {
+                String date = libraries.get(i).path("releaseDate").asText("");
+                try {
+                    released[i] = date.length() < 10 ? 0 : format.parse(date.substring(0, 10)).getTime();
+                } catch (ParseException e) {
+                    released[i] = 0; // unknown, never old enough
+                }
+            }
+            return new Results(index, severity, score, released);
+        }
+
+        private static int severity(String name) {
+            try {
+                return CxResultSeverity.valueOf(name.trim().toUpperCase(Locale.ENGLISH)).ordinal();
+            } catch (IllegalArgumentException e) {
+                return CxResultSeverity.INFO.ordinal();
+            }
+        }
+
+        private static List<JsonNode> readArray(File json) throws IOException {
+            List<JsonNode> ret = new ArrayList<JsonNode>();
+            if (!json.isFile()) {
+                return ret;
+            }
+            JsonParser parser = CxJson.MAPPER.getFactory().createParser(json);
+            try {
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    return ret;
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    ret.add(parser.<JsonNode>readValueAsTree());
+                }
+            } finally {
+                IOUtils.closeQuietly(parser);
+            }
+            return ret;
+        }
+    }
+}
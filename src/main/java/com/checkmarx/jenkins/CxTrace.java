@@ -0,0 +1,56 @@
+package com.checkmarx.jenkins;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spans of one Checkmarx build step. The controller starts the trace with its root span; the agent continues it
+ * from the {@link CxSpan.Context} it receives and sends its finished spans back with the scan results.
+ */
+public final class CxTrace implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String traceId;
+    private final List<CxSpan> spans = new ArrayList<CxSpan>();
+
+    private CxTrace(String traceId) {
+        this.traceId = traceId;
+    }
+
+    /**
+     * Starts a new trace and returns its root span.
+     */
+    public static CxSpan startRoot(String name) {
+        return new CxSpan(new CxTrace(CxSpan.newId(16)), name, null, System.currentTimeMillis());
+    }
+
+    /**
+     * Continues a trace started elsewhere and returns a span under the given parent.
+     */
+    public static CxSpan continueFrom(CxSpan.Context parent, String name) {
+        return new CxSpan(new CxTrace(parent.getTraceId()), name, parent.getSpanId(), System.currentTimeMillis());
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    synchronized void finished(CxSpan span) {
+        spans.add(span);
+    }
+
+    /**
+     * Adds spans finished in another JVM, as returned by an agent.
+     */
+    public synchronized void addAll(List<CxSpan> remote) {
+        if (remote != null) {
+            spans.addAll(remote);
+        }
+    }
+
+    public synchronized List<CxSpan> getSpans() {
+        return new ArrayList<CxSpan>(spans);
+    }
+}
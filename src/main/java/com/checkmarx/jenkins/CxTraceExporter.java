@@ -0,0 +1,161 @@
+package com.checkmarx.jenkins;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import jenkins.model.Jenkins;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes finished traces to {@code $JENKINS_HOME/logs/checkmarx/traces.jsonl}, one OTLP/JSON
+ * {@code ExportTraceServiceRequest} per line, so they can be loaded into any OpenTelemetry compatible tool
+ * without running a collector. The file is rolled over when it reaches its size limit, keeping a few old files.
+ */
+public final class CxTraceExporter {
+
+    private static final Logger LOGGER = Logger.getLogger(CxTraceExporter.class.getName());
+
+    static final boolean DISABLED = Boolean.getBoolean(CxTraceExporter.class.getName() + ".disabled");
+    private static final long MAX_FILE_BYTES = Long.getLong(CxTraceExporter.class.getName() + ".maxFileBytes", 16 * 1024 * 1024);
+    private static final int MAX_FILES = Integer.getInteger(CxTraceExporter.class.getName() + ".maxFiles", 5);
+
+    private static final String FILE_NAME = "traces";
+    private static final String FILE_SUFFIX = ".jsonl";
+    private static final String SERVICE_NAME = "jenkins-checkmarx";
+    private static final int SPAN_KIND_INTERNAL = 1;
+    private static final int STATUS_OK = 1;
+    private static final int STATUS_ERROR = 2;
+
+    private static final CxTraceExporter INSTANCE = new CxTraceExporter();
+
+    private CxTraceExporter() {
+    }
+
+    public static CxTraceExporter get() {
+        return INSTANCE;
+    }
+
+    public void export(CxTrace trace) {
+        if (DISABLED) {
+            return;
+        }
+        List<CxSpan> spans = trace.getSpans();
+        if (spans.isEmpty()) {
+            return;
+        }
+        try {
+            write(spans);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to export Checkmarx trace " + trace.getTraceId(), e);
+        }
+    }
+
+    private synchronized void write(List<CxSpan> spans) throws IOException {
+        File dir = new File(new File(Jenkins.getInstance().getRootDir(), "logs"), "checkmarx");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+        File file = new File(dir, FILE_NAME + FILE_SUFFIX);
+        if (file.length() >= MAX_FILE_BYTES) {
+            roll(dir);
+        }
+
+        OutputStream out = new FileOutputStream(file, true);
+        try {
+            JsonGenerator g = CxJson.MAPPER.getFactory().createGenerator(out);
+            writeRequest(g, spans);
+            g.flush();
+            out.write('\n');
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    private static void roll(File dir) {
+        new File(dir, FILE_NAME + "." + (MAX_FILES - 1) + FILE_SUFFIX).delete();
+        for (int i = MAX_FILES - 2; i >= 0; i--) {
+            File from = new File(dir, i == 0 ? FILE_NAME + FILE_SUFFIX : FILE_NAME + "." + i + FILE_SUFFIX);
+            if (from.exists()) {
+                from.renameTo(new File(dir, FILE_NAME + "." + (i + 1) + FILE_SUFFIX));
+            }
+        }
+    }
+
+    private static void writeRequest(JsonGenerator g, List<CxSpan> spans) throws IOException {
+        g.writeStartObject();
+        g.writeArrayFieldStart("resourceSpans");
+        g.writeStartObject();
+        g.writeObjectFieldStart("resource");
+        g.writeArrayFieldStart("attributes");
+        writeAttribute(g, "service.name", SERVICE_NAME);
+        g.writeEndArray();
+        g.writeEndObject();
+        g.writeArrayFieldStart("scopeSpans");
+        g.writeStartObject();
+        g.writeObjectFieldStart("scope");
+        g.writeStringField("name", CxTraceExporter.class.getPackage().getName());
+        g.writeEndObject();
+        g.writeArrayFieldStart("spans");
+        for (CxSpan span : spans) {
+            writeSpan(g, span);
+        }
+        g.writeEndArray();
+        g.writeEndObject();
+        g.writeEndArray();
+        g.writeEndObject();
+        g.writeEndArray();
+        g.writeEndObject();
+    }
+
+    private static void writeSpan(JsonGenerator g, CxSpan span) throws IOException {
+        g.writeStartObject();
+        g.writeStringField("traceId", span.getTraceId());
+        g.writeStringField("spanId", span.getSpanId());
+        if (span.getParentSpanId() != null) {
+            g.writeStringField("parentSpanId", span.getParentSpanId());
+        }
+        g.writeStringField("name", span.getName());
+        g.writeNumberField("kind", SPAN_KIND_INTERNAL);
+        // 64 bit integers are strings in OTLP/JSON
+        g.writeStringField("startTimeUnixNano", Long.toString(span.getStartMillis() * 1000000L));
+        g.writeStringField("endTimeUnixNano", Long.toString(span.getEndMillis() * 1000000L));
+        g.writeArrayFieldStart("attributes");
+        for (Map.Entry<String, Object> e : span.getAttributes().entrySet()) {
+            writeAttribute(g, e.getKey(), e.getValue());
+        }
+        g.writeEndArray();
+        g.writeObjectFieldStart("status");
+        if (span.getErrorMessage() != null) {
+            g.writeNumberField("code", STATUS_ERROR);
+            g.writeStringField("message", span.getErrorMessage());
+        } else {
+            g.writeNumberField("code", STATUS_OK);
+        }
+        g.writeEndObject();
+        g.writeEndObject();
+    }
+
+    private static void writeAttribute(JsonGenerator g, String key, Object value) throws IOException {
+        g.writeStartObject();
+        g.writeStringField("key", key);
+        g.writeObjectFieldStart("value");
+        if (value instanceof Boolean) {
+            g.writeBooleanField("boolValue", (Boolean) value);
+        } else if (value instanceof Integer || value instanceof Long) {
+            g.writeStringField("intValue", value.toString());
+        } else if (value instanceof Number) {
+            g.writeNumberField("doubleValue", ((Number) value).doubleValue());
+        } else {
+            g.writeStringField("stringValue", String.valueOf(value));
+        }
+        g.writeEndObject();
+        g.writeEndObject();
+    }
+}
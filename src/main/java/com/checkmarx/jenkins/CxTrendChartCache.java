@@ -0,0 +1,209 @@
+package com.checkmarx.jenkins;
+
+import hudson.model.Job;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded cache of rendered trend charts (PNG images and clickable maps).
+ * <p>
+ * Entries are keyed by job, the number of the last build holding scan results, a version of the charted data
+ * and the requested size, so a new build, or a deleted or rewritten older one, naturally produces new keys. The
+ * version is a per-job counter bumped by {@link #invalidate}, kept next to the cached charts so that it survives a
+ * restart like they do. The memory tier is a small LRU shared by all jobs, the disk tier lives under the job root
+ * directory so charts survive a controller restart.
+ */
+public final class CxTrendChartCache {
+
+    private static final Logger LOGGER = Logger.getLogger(CxTrendChartCache.class.getName());
+
+    static final String CACHE_DIR = "checkmarx-cache";
+    private static final String FILE_PREFIX = "trend-";
+    private static final String VERSION_FILE = "trend.version";
+
+    private static final int MAX_MEMORY_ENTRIES = Integer.getInteger(CxTrendChartCache.class.getName() + ".maxMemoryEntries", 128);
+    private static final int MAX_DISK_ENTRIES_PER_JOB = Integer.getInteger(CxTrendChartCache.class.getName() + ".maxDiskEntriesPerJob", 16);
+
+    private static final CxTrendChartCache INSTANCE = new CxTrendChartCache();
+
+    private final Map<String, byte[]> memory = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > MAX_MEMORY_ENTRIES;
+        }
+    };
+
+    private final Map<String, Integer> versions = new HashMap<String, Integer>();
+
+    private CxTrendChartCache() {
+        // Singleton
+    }
+
+    public static CxTrendChartCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Builds the file name (and in-memory key suffix) of a cached chart.
+     *
+     * @param buildNumber number of the last build with scan results
+     * @param dataVersion {@link #dataVersion version} of the charted data
+     * @param width       requested chart width
+     * @param height      requested chart height
+     * @param variant     "png" for the image, or a map variant discriminator
+     */
+    static String entryName(int buildNumber, int dataVersion, int width, int height, String variant) {
+        return FILE_PREFIX + buildNumber + "-" + Integer.toHexString(dataVersion) + "-" + width + "x" + height + "." + variant;
+    }
+
+    /**
+     * Strong entity tag for a cached chart. The rendered bytes are fully determined by the key.
+     */
+    static String etag(Job<?, ?> job, String entryName) {
+        return "\"cx-" + Integer.toHexString(job.getFullName().hashCode()) + "-" + entryName + "\"";
+    }
+
+    /**
+     * Version of the charted data of the given job, which changes whenever one of its builds completes or is
+     * deleted.
+     */
+    public int dataVersion(Job<?, ?> job) {
+        synchronized (versions) {
+            Integer version = versions.get(job.getFullName());
+            if (version == null) {
+                version = readVersion(job);
+                versions.put(job.getFullName(), version);
+            }
+            return version;
+        }
+    }
+
+    public byte[] lookup(Job<?, ?> job, String entryName) {
+        String key = memoryKey(job, entryName);
+        synchronized (memory) {
+            byte[] cached = memory.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        File file = new File(cacheDir(job), entryName);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            byte[] bytes = FileUtils.readFileToByteArray(file);
+            synchronized (memory) {
+                memory.put(key, bytes);
+            }
+            return bytes;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to read cached chart " + file, e);
+            return null;
+        }
+    }
+
+    public void store(Job<?, ?> job, String entryName, byte[] bytes) {
+        synchronized (memory) {
+            memory.put(memoryKey(job, entryName), bytes);
+        }
+
+        File dir = cacheDir(job);
+        try {
+            FileUtils.writeByteArrayToFile(new File(dir, entryName), bytes);
+            trimDisk(dir);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to write cached chart to " + dir, e);
+        }
+    }
+
+    /**
+     * Drops every cached chart of the given job and bumps its {@link #dataVersion data version}. Called whenever a
+     * build of the job completes or is deleted.
+     */
+    public void invalidate(Job<?, ?> job) {
+        synchronized (versions) {
+            int version = dataVersion(job) + 1;
+            versions.put(job.getFullName(), version);
+            File file = new File(cacheDir(job), VERSION_FILE);
+            try {
+                FileUtils.writeStringToFile(file, Integer.toString(version), "UTF-8");
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to write " + file, e);
+            }
+        }
+
+        String prefix = job.getFullName() + "/";
+        synchronized (memory) {
+            Iterator<String> it = memory.keySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+
+        File[] files = cacheDir(job).listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.getName().startsWith(FILE_PREFIX) && !f.delete()) {
+                    LOGGER.fine("Failed to delete cached chart " + f);
+                }
+            }
+        }
+    }
+
+    private static int readVersion(Job<?, ?> job) {
+        File file = new File(cacheDir(job), VERSION_FILE);
+        if (!file.isFile()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(FileUtils.readFileToString(file, "UTF-8").trim());
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.log(Level.FINE, "Failed to read " + file, e);
+            return 0;
+        }
+    }
+
+    private void trimDisk(File dir) {
+        // the cache directory is shared with other caches of the job, only charts count here
+        File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File d, String name) {
+                return name.startsWith(FILE_PREFIX);
+            }
+        });
+        if (files == null || files.length <= MAX_DISK_ENTRIES_PER_JOB) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (int i = 0; i < files.length - MAX_DISK_ENTRIES_PER_JOB; i++) {
+            files[i].delete();
+        }
+    }
+
+    private static File cacheDir(Job<?, ?> job) {
+        return new File(job.getRootDir(), CACHE_DIR);
+    }
+
+    private static String memoryKey(Job<?, ?> job, String entryName) {
+        return job.getFullName() + "/" + entryName;
+    }
+}
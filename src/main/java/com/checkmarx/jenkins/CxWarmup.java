@@ -0,0 +1,80 @@
+package com.checkmarx.jenkins;
+
+import com.cx.restclient.dto.Team;
+import com.cx.restclient.sast.dto.CxNameObj;
+import com.cx.restclient.sast.dto.Preset;
+import com.cx.restclient.sast.dto.Project;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Warms up the plugin in the background once Jenkins has started, so the first configuration page or build
+ * does not pay for loading configuration, the Checkmarx client classes and the server metadata.
+ */
+public final class CxWarmup {
+
+    private static final Logger LOGGER = Logger.getLogger(CxWarmup.class.getName());
+
+    private static final boolean DISABLED = Boolean.getBoolean(CxWarmup.class.getName() + ".disabled");
+
+    private static final String[] CLASSES = {
+            "com.cx.restclient.CxShragaClient",
+            "com.cx.restclient.configuration.CxScanConfig",
+            "com.cx.restclient.common.ShragaUtils",
+            "com.cx.restclient.common.summary.SummaryUtils",
+            "freemarker.template.Configuration"
+    };
+
+    private CxWarmup() {
+        // Hides default constructor
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void schedule() {
+        if (DISABLED) {
+            return;
+        }
+        Timer.get().submit(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                warmUp();
+                LOGGER.fine("Checkmarx plugin warm-up took " + (System.currentTimeMillis() - start) + " ms");
+            }
+        });
+    }
+
+    static void warmUp() {
+        // cxconfig.xml and the default patterns derived from it
+        CxConfig.defaultFilterPattern();
+        CxConfig.getDefaultOsaArchiveIncludePatterns();
+
+        ClassLoader loader = CxWarmup.class.getClassLoader();
+        for (String name : CLASSES) {
+            try {
+                Class.forName(name, true, loader);
+            } catch (Throwable e) {
+                LOGGER.log(Level.FINE, "Failed to load " + name, e);
+            }
+        }
+
+        // the first (de)serialization builds Jackson's serializer caches
+        try {
+            CxJson.MAPPER.writeValueAsString(new CxServerMetadataCache.Metadata(Collections.<Project>emptyList(),
+                    Collections.<Preset>emptyList(), Collections.<CxNameObj>emptyList(), Collections.<Team>emptyList()));
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Failed to warm up JSON mapper", e);
+        }
+
+        CxScanBuilder.DescriptorImpl descriptor = (CxScanBuilder.DescriptorImpl) Jenkins.getInstance().getDescriptor(CxScanBuilder.class);
+        if (descriptor != null) {
+            descriptor.warmUpServerMetadata();
+        }
+    }
+}
@@ -1,19 +1,26 @@
 package com.checkmarx.jenkins;
 
 
-import hudson.WebAppMain;
-import org.apache.commons.lang.exception.ExceptionUtils;
 import org.slf4j.Marker;
+import org.slf4j.helpers.FormattingTuple;
+import org.slf4j.helpers.MessageFormatter;
 
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 
+/**
+ * slf4j logger of the Checkmarx client on the controller (form fills, connection tests), backed by the
+ * {@code java.util.logging} logger of this class. Levels map to JUL as trace = FINER, debug = FINE, info = INFO,
+ * warn = WARNING and error = SEVERE. Messages are only formatted when their level is enabled, and throwables
+ * are passed on to JUL as such.
+ */
 public class JenkinsServerLogger implements org.slf4j.Logger {
 
     private final Logger log;
 
     public JenkinsServerLogger() {
-        this.log = Logger.getLogger(WebAppMain.class.getName());
+        this.log = Logger.getLogger(JenkinsServerLogger.class.getName());
     }
 
     @Override
@@ -21,69 +28,164 @@ public class JenkinsServerLogger implements org.slf4j.Logger {
         return "Checkmarx";
     }
 
+    private void log(Level level, String msg, Throwable t) {
+        if (log.isLoggable(level)) {
+            log.logp(level, null, null, msg, t);
+        }
+    }
 
-    public boolean isDebugEnabled() {
-        return true;
+    private void log(Level level, String format, Object arg) {
+        if (log.isLoggable(level)) {
+            publish(level, MessageFormatter.format(format, arg));
+        }
     }
 
-    @Override
-    public boolean isInfoEnabled() {
-        return true;
+    private void log(Level level, String format, Object arg1, Object arg2) {
+        if (log.isLoggable(level)) {
+            publish(level, MessageFormatter.format(format, arg1, arg2));
+        }
     }
 
-    @Override
-    public boolean isWarnEnabled() {
-        return true;
+    private void log(Level level, String format, Object... arguments) {
+        if (log.isLoggable(level)) {
+            publish(level, MessageFormatter.arrayFormat(format, arguments));
+        }
     }
 
-    @Override
-    public boolean isErrorEnabled() {
-        return true;
+    private void publish(Level level, FormattingTuple tuple) {
+        log.logp(level, null, null, tuple.getMessage(), tuple.getThrowable());
+    }
+
+    public boolean isTraceEnabled() {
+        return log.isLoggable(Level.FINER);
+    }
+
+    public void trace(String s) {
+        log(Level.FINER, s, (Throwable) null);
+    }
+
+    public void trace(String s, Object o) {
+        log(Level.FINER, s, o);
+    }
+
+    public void trace(String s, Object o, Object o1) {
+        log(Level.FINER, s, o, o1);
+    }
+
+    public void trace(String s, Object... objects) {
+        log(Level.FINER, s, objects);
+    }
+
+    public void trace(String s, Throwable throwable) {
+        log(Level.FINER, s, throwable);
+    }
+
+    public boolean isDebugEnabled() {
+        return log.isLoggable(Level.FINE);
     }
 
     public void debug(String s) {
-        log.info(s);
+        log(Level.FINE, s, (Throwable) null);
+    }
+
+    public void debug(String s, Object o) {
+        log(Level.FINE, s, o);
+    }
+
+    public void debug(String s, Object o, Object o1) {
+        log(Level.FINE, s, o, o1);
+    }
+
+    public void debug(String s, Object... objects) {
+        log(Level.FINE, s, objects);
     }
 
     public void debug(String s, Throwable throwable) {
-        log.info(s);
-        if(throwable != null) {
-            log.info(ExceptionUtils.getStackTrace(throwable));
-        }
+        log(Level.FINE, s, throwable);
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return log.isLoggable(Level.INFO);
     }
 
     public void info(String s) {
-        log.info(s);
+        log(Level.INFO, s, (Throwable) null);
+    }
+
+    @Override
+    public void info(String format, Object arg) {
+        log(Level.INFO, format, arg);
+    }
+
+    @Override
+    public void info(String format, Object arg1, Object arg2) {
+        log(Level.INFO, format, arg1, arg2);
+    }
+
+    @Override
+    public void info(String format, Object... arguments) {
+        log(Level.INFO, format, arguments);
     }
 
     public void info(String s, Throwable throwable) {
-        log.info(s);
-        if(throwable != null) {
-            log.info(ExceptionUtils.getStackTrace(throwable));
-        }
+        log(Level.INFO, s, throwable);
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return log.isLoggable(Level.WARNING);
     }
 
     public void warn(String s) {
-        log.warning(s);
+        log(Level.WARNING, s, (Throwable) null);
+    }
 
+    @Override
+    public void warn(String format, Object arg) {
+        log(Level.WARNING, format, arg);
+    }
+
+    @Override
+    public void warn(String format, Object arg1, Object arg2) {
+        log(Level.WARNING, format, arg1, arg2);
+    }
+
+    @Override
+    public void warn(String format, Object... arguments) {
+        log(Level.WARNING, format, arguments);
     }
 
     public void warn(String s, Throwable throwable) {
-        log.warning(s);
-        if(throwable != null) {
-            log.warning(ExceptionUtils.getStackTrace(throwable));
-        }
+        log(Level.WARNING, s, throwable);
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return log.isLoggable(Level.SEVERE);
     }
 
     public void error(String s) {
-        log.severe(s);
+        log(Level.SEVERE, s, (Throwable) null);
+    }
+
+    @Override
+    public void error(String format, Object arg) {
+        log(Level.SEVERE, format, arg);
+    }
+
+    @Override
+    public void error(String format, Object arg1, Object arg2) {
+        log(Level.SEVERE, format, arg1, arg2);
+    }
+
+    @Override
+    public void error(String format, Object... arguments) {
+        log(Level.SEVERE, format, arguments);
     }
 
     public void error(String s, Throwable throwable) {
-        log.severe(s);
-        if(throwable != null) {
-            log.severe(ExceptionUtils.getStackTrace(throwable));
-        }
+        log(Level.SEVERE, s, throwable);
     }
 
     public String toString() {
@@ -91,7 +193,7 @@ public class JenkinsServerLogger implements org.slf4j.Logger {
     }
 
 
-    //--- ignoring ---
+    //--- markers are ignored ---
     public boolean isTraceEnabled(Marker marker) {
         return this.isTraceEnabled();
     }
@@ -211,80 +313,4 @@ public class JenkinsServerLogger implements org.slf4j.Logger {
     public void error(Marker marker, String msg, Throwable t) {
         this.error(msg, t);
     }
-
-    public boolean isTraceEnabled() {
-        return false;
-    }
-
-    public void trace(String s) {
-    }
-
-    public void trace(String s, Object o) {
-    }
-
-    public void trace(String s, Object o, Object o1) {
-    }
-
-    public void trace(String s, Object... objects) {
-    }
-
-    public void trace(String s, Throwable throwable) {
-    }
-
-    public void debug(String s, Object o) {
-
-    }
-
-    public void debug(String s, Object o, Object o1) {
-    }
-
-    public void debug(String s, Object... objects) {
-
-    }
-
-    @Override
-    public void info(String format, Object arg) {
-
-    }
-
-    @Override
-    public void info(String format, Object arg1, Object arg2) {
-
-    }
-
-    @Override
-    public void info(String format, Object... arguments) {
-
-    }
-
-    @Override
-    public void warn(String format, Object arg) {
-
-    }
-
-    @Override
-    public void warn(String format, Object... arguments) {
-
-    }
-
-    @Override
-    public void warn(String format, Object arg1, Object arg2) {
-
-    }
-
-
-    @Override
-    public void error(String format, Object arg) {
-
-    }
-
-    @Override
-    public void error(String format, Object arg1, Object arg2) {
-
-    }
-
-    @Override
-    public void error(String format, Object... arguments) {
-
-    }
 }
@@ -6,17 +6,22 @@ import com.cx.restclient.osa.dto.OSAResults;
 import com.cx.restclient.sast.dto.SASTResults;
 
 import java.io.Serializable;
+import java.util.List;
 
 public class ScanResults implements Serializable {
 
     private SASTResults sastResults;
     private OSAResults osaResults;
 
+    private Exception loginException = null;
     private Exception sastCreateException = null;
     private Exception sastWaitException = null;
     private Exception osaCreateException = null;
     private Exception osaWaitException = null;
 
+    private CxPhaseTimings phaseTimings;
+    private List<CxSpan> spans;
+
     public ScanResults() {
     }
 
@@ -36,6 +41,17 @@ public class ScanResults implements Serializable {
         this.osaResults = osaResults;
     }
 
+    /**
+     * Failure to log in on the agent; no scan was created then.
+     */
+    public Exception getLoginException() {
+        return loginException;
+    }
+
+    public void setLoginException(Exception loginException) {
+        this.loginException = loginException;
+    }
+
     public Exception getSastCreateException() {
         return sastCreateException;
     }
@@ -67,4 +83,26 @@ public class ScanResults implements Serializable {
     public void setOsaWaitException(Exception osaWaitException) {
         this.osaWaitException = osaWaitException;
     }
+
+    /**
+     * Phases timed on the agent, relative to the start of the scan there.
+     */
+    public CxPhaseTimings getPhaseTimings() {
+        return phaseTimings;
+    }
+
+    public void setPhaseTimings(CxPhaseTimings phaseTimings) {
+        this.phaseTimings = phaseTimings;
+    }
+
+    /**
+     * Spans finished on the agent, to be exported with the controller's trace.
+     */
+    public List<CxSpan> getSpans() {
+        return spans;
+    }
+
+    public void setSpans(List<CxSpan> spans) {
+        this.spans = spans;
+    }
 }
@@ -0,0 +1,135 @@
+/*
+ * Virtualized findings list for the Checkmarx build results page.
+ *
+ * Findings are fetched page by page from the build's "results" JSON endpoint as the user scrolls,
+ * and only the rows inside the viewport are kept in the DOM.
+ */
+var CxFindings = (function () {
+    var ROW_HEIGHT = 24;
+    var PAGE_SIZE = 500;
+    var OVERSCAN = 10;
+
+    function Findings(container) {
+        this.url = container.getAttribute("data-url");
+        this.viewport = container.querySelector(".FindingsViewport");
+        this.spacer = container.querySelector(".FindingsSpacer");
+        this.summary = container.querySelector(".FindingsSummary");
+        this.severity = container.querySelector(".FindingsFilterSeverity");
+        this.text = container.querySelector(".FindingsFilterFile");
+        this.rows = [];
+        this.total = 0;
+        this.nextCursor = "0";
+        this.loading = false;
+        this.generation = 0;
+
+        var self = this;
+        this.viewport.onscroll = function () {
+            self.render();
+        };
+        this.severity.onchange = function () {
+            self.reset();
+        };
+        var timer = null;
+        this.text.onkeyup = function () {
+            clearTimeout(timer);
+            timer = setTimeout(function () {
+                self.reset();
+            }, 300);
+        };
+        this.reset();
+    }
+
+    Findings.prototype.reset = function () {
+        this.generation++;
+        this.rows = [];
+        this.total = 0;
+        this.nextCursor = "0";
+        this.loading = false;
+        this.viewport.scrollTop = 0;
+        this.load();
+    };
+
+    Findings.prototype.load = function () {
+        if (this.loading || this.nextCursor === null) {
+            return;
+        }
+        this.loading = true;
+
+        var query = "?limit=" + PAGE_SIZE + "&cursor=" + encodeURIComponent(this.nextCursor);
+        if (this.severity.value) {
+            query += "&severity=" + encodeURIComponent(this.severity.value);
+        }
+        if (this.text.value) {
+            query += "&file=" + encodeURIComponent(this.text.value);
+        }
+
+        var self = this;
+        var generation = this.generation;
+        var xhr = new XMLHttpRequest();
+        xhr.open("GET", this.url + query, true);
+        xhr.onreadystatechange = function () {
+            if (xhr.readyState !== 4 || generation !== self.generation) {
+                return;
+            }
+            self.loading = false;
+            if (xhr.status !== 200) {
+                self.summary.textContent = "Failed to load findings (HTTP " + xhr.status + ")";
+                return;
+            }
+            var page = JSON.parse(xhr.responseText);
+            self.total = page.total;
+            self.nextCursor = page.nextCursor;
+            self.rows = self.rows.concat(page.results);
+            self.summary.textContent = self.total + " findings";
+            self.render();
+        };
+        xhr.send(null);
+    };
+
+    Findings.prototype.render = function () {
+        this.spacer.style.height = (this.total * ROW_HEIGHT) + "px";
+
+        var first = Math.max(0, Math.floor(this.viewport.scrollTop / ROW_HEIGHT) - OVERSCAN);
+        var last = Math.min(this.total, Math.ceil((this.viewport.scrollTop + this.viewport.clientHeight) / ROW_HEIGHT) + OVERSCAN);
+
+        // pages are fetched in order, keep loading until the visible window is covered
+        if (last > this.rows.length) {
+            this.load();
+        }
+
+        var html = [];
+        for (var i = first; i < Math.min(last, this.rows.length); i++) {
+            html.push(rowHtml(this.rows[i], i));
+        }
+        this.spacer.innerHTML = html.join("");
+    };
+
+    function rowHtml(r, i) {
+        var query = escapeHtml(r.query);
+        if (r.deepLink) {
+            query = "<a target=\"_blank\" href=\"" + escapeHtml(r.deepLink) + "\">" + query + "</a>";
+        }
+        return "<div class=\"FindingsRow\" style=\"top:" + (i * ROW_HEIGHT) + "px\">"
+            + "<span class=\"FindingsSeverity FindingsSeverity-" + escapeHtml(r.severity) + "\">" + escapeHtml(r.severity) + "</span>"
+            + "<span class=\"FindingsQuery\" title=\"" + escapeHtml(r.query) + "\">" + query + "</span>"
+            + "<span class=\"FindingsFile\" title=\"" + escapeHtml(r.file) + "\">" + escapeHtml(r.file) + ":" + r.line + "</span>"
+            + "<span class=\"FindingsStatus\">" + escapeHtml(r.status) + (r.falsePositive ? " (FP)" : "") + "</span>"
+            + "</div>";
+    }
+
+    function escapeHtml(s) {
+        if (s === null || s === undefined) {
+            return "";
+        }
+        return String(s).replace(/&/g, "&amp;").replace(/</g, "&lt;").replace(/>/g, "&gt;").replace(/"/g, "&quot;");
+    }
+
+    return {
+        init: function (id) {
+            var container = document.getElementById(id);
+            if (container) {
+                new Findings(container);
+            }
+        }
+    };
+})();
@@ -0,0 +1,268 @@
+package com.checkmarx.jenkins;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CxThresholdPolicyTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final long NOW = System.currentTimeMillis();
+
+    // --- compilation ---
+
+    @Test
+    public void compileSkipsCommentsAndBlankLines() {
+        CxThresholdPolicy policy = CxThresholdPolicy.compile("# header\n\n   \nsast severity=high > 0 # trailing\r\nosa cvss>=9 > 0\n");
+        assertFalse(policy.isEmpty());
+        assertFalse(policy.needsPrevious());
+        assertTrue(CxThresholdPolicy.compile("# only a comment\n").isEmpty());
+        assertTrue(CxThresholdPolicy.compile(null).isEmpty());
+    }
+
+    @Test
+    public void compileErrorsNameTheLine() {
+        assertCompileError("sast > 0\n\n# comment\nsast severity=critical > 0", "Line 4: unknown severity 'critical'");
+        assertCompileError("dast > 0", "Line 1: unknown source 'dast'");
+        assertCompileError("sast > 0\nsast severity=high", "Line 2: expected 'source [filter...] > limit'");
+        assertCompileError("sast > 0\nsast >= 0", "Line 2: expected 'source [filter...] > limit'");
+        assertCompileError("sast > -1", "Line 1: limit must not be negative");
+        assertCompileError("sast > many", "Line 1: invalid limit 'many'");
+        assertCompileError("sast > previous-1", "Line 1: expected 'previous' or 'previous+N'");
+        assertCompileError("sast > previous+x", "Line 1: invalid limit 'previous+x'");
+        assertCompileError("sast cwe=abc > 0", "Line 1: invalid cwe 'abc'");
+        assertCompileError("sast high > 0", "Line 1: expected a filter like 'key=value'");
+        assertCompileError("osa query=SQL_Injection > 0", "Line 1: filter 'query' is not supported for osa");
+        assertCompileError("sast cvss>=7 > 0", "Line 1: filter 'cvss>=' is not supported for sast");
+        assertCompileError("osa.libraries severity=high > 0", "Line 1: filter 'severity' is not supported for osa.libraries");
+    }
+
+    @Test
+    public void compileDetectsRulesNeedingThePreviousBuild() {
+        assertTrue(CxThresholdPolicy.compile("sast > previous").needsPrevious());
+        assertTrue(CxThresholdPolicy.compile("sast > previous+10").needsPrevious());
+        assertTrue(CxThresholdPolicy.compile("sast.new > 0").needsPrevious());
+        assertFalse(CxThresholdPolicy.compile("sast > 10\nosa > 0").needsPrevious());
+    }
+
+    @Test
+    public void getCachesCompiledPolicies() {
+        String text = "sast severity=high,medium > 3";
+        assertSame(CxThresholdPolicy.get(text), CxThresholdPolicy.get(text));
+    }
+
+    // --- glob ---
+
+    @Test
+    public void globMatchesAcrossDirectoriesOnlyWithDoubleStar() {
+        assertTrue(CxThresholdPolicy.glob("src/**/*.java").matcher("src/main/java/A.java").matches());
+        assertTrue(CxThresholdPolicy.glob("src/**").matcher("src/main/java/A.java").matches());
+        assertTrue(CxThresholdPolicy.glob("src/*.java").matcher("src/A.java").matches());
+        assertFalse(CxThresholdPolicy.glob("src/*.java").matcher("src/main/A.java").matches());
+        assertFalse(CxThresholdPolicy.glob("src/**/*.java").matcher("test/main/A.java").matches());
+        assertFalse(CxThresholdPolicy.glob("src/**/*.java").matcher("src/main/A.jsp").matches());
+    }
+
+    @Test
+    public void globQuotesRegexCharactersAndIgnoresCase() {
+        assertTrue(CxThresholdPolicy.glob("web/a?.js").matcher("web/ab.js").matches());
+        assertFalse(CxThresholdPolicy.glob("web/a?.js").matcher("web/a/.js").matches());
+        assertFalse(CxThresholdPolicy.glob("web/a.js").matcher("web/abjs").matches());
+        assertTrue(CxThresholdPolicy.glob("lib/(x)+[y].js").matcher("lib/(x)+[y].js").matches());
+        assertTrue(CxThresholdPolicy.glob("SRC/**").matcher("src/Main.java").matches());
+        assertTrue(CxThresholdPolicy.glob("src\\**").matcher("src/Main.java").matches());
+    }
+
+    @Test
+    public void pathFilterMatchesWindowsSeparators() throws IOException {
+        File build = report("build1",
+                result("SQL_Injection", "High", "src\\main\\A.java", 1),
+                result("SQL_Injection", "High", "test\\B.java", 2));
+
+        CxThresholdPolicy.Violation v = evaluate("sast path=src/** > 0", build, null);
+        assertNotNull(v);
+        assertEquals(1, v.getCount());
+        assertNull(evaluate("sast path=src/** > 1", build, null));
+    }
+
+    // --- evaluation ---
+
+    @Test
+    public void filtersSelectBySeverityQueryAndCwe() throws IOException {
+        File build = report("build1",
+                result("SQL_Injection", "High", "A.java", 1),
+                result("SQL_Injection", "High", "B.java", 2),
+                result("Stored_XSS", "Medium", "C.java", 3),
+                result("Log_Forging", "Low", "D.java", 4));
+
+        assertNull(evaluate("sast severity=high > 2", build, null));
+        assertViolation(evaluate("sast severity=high,medium > 2", build, null), 1, 3, 2);
+        assertViolation(evaluate("sast query=stored_xss > 0", build, null), 1, 1, 0);
+        assertViolation(evaluate("sast cwe=89 > 1", build, null), 1, 2, 1);
+        assertNull(evaluate("sast cwe=79 severity=high > 0", build, null));
+    }
+
+    @Test
+    public void falsePositivesAreNotCounted() throws IOException {
+        File build = report("build1",
+                result("SQL_Injection", "High", "A.java", 1),
+                "<Result FileName=\"B.java\" Line=\"1\" Column=\"1\" Severity=\"High\" FalsePositive=\"True\">"
+                        + "<Path SimilarityId=\"2\" PathId=\"2\"/></Result>");
+
+        assertNull(evaluate("sast > 1", build, null));
+    }
+
+    @Test
+    public void stopsAtTheFirstRuleOverItsLimit() throws IOException {
+        File build = report("build1",
+                result("SQL_Injection", "High", "A.java", 1),
+                result("SQL_Injection", "High", "B.java", 2),
+                result("SQL_Injection", "High", "C.java", 3),
+                result("SQL_Injection", "High", "D.java", 4),
+                result("SQL_Injection", "High", "E.java", 5));
+
+        // counting stops as soon as the limit is exceeded
+        assertViolation(evaluate("sast > 1", build, null), 1, 2, 1);
+
+        // rules are counted in one pass, the rule exceeding its limit first is reported even on a later line
+        CxThresholdPolicy.Violation v = evaluate("sast > 3\nsast severity=high > 0", build, null);
+        assertViolation(v, 2, 1, 0);
+        assertTrue(v.toString().contains("line 2"));
+    }
+
+    @Test
+    public void previousLimitsAddToTheCountOfThePreviousBuild() throws IOException {
+        File previous = report("build1",
+                result("SQL_Injection", "High", "A.java", 1));
+        File current = report("build2",
+                result("SQL_Injection", "High", "A.java", 1),
+                result("SQL_Injection", "High", "B.java", 2),
+                result("SQL_Injection", "High", "C.java", 3));
+
+        assertNull(evaluate("sast > previous+2", current, previous));
+        assertViolation(evaluate("sast > previous+1", current, previous), 1, 3, 2);
+        assertViolation(evaluate("sast > previous", current, previous), 1, 2, 1);
+        // only findings matching the rule count in the previous build too
+        assertViolation(evaluate("sast path=B.java > previous", current, previous), 1, 1, 0);
+    }
+
+    @Test
+    public void previousLimitsPassWithoutAPreviousBuild() throws IOException {
+        File current = report("build1",
+                result("SQL_Injection", "High", "A.java", 1),
+                result("SQL_Injection", "High", "B.java", 2));
+
+        assertNull(evaluate("sast > previous", current, null));
+        assertNull(evaluate("sast > previous+0", current, null));
+    }
+
+    @Test
+    public void newResultsAreMatchedOneToOneAgainstThePreviousBuild() throws IOException {
+        File previous = report("build1",
+                result("SQL_Injection", "High", "A.java", 1),
+                result("Stored_XSS", "Medium", "B.java", 2));
+        File current = report("build2",
+                result("SQL_Injection", "High", "A.java", 1),
+                // same fingerprint twice, only one of them existed before
+                result("SQL_Injection", "High", "A.java", 1),
+                result("Stored_XSS", "Medium", "B.java", 2),
+                result("Stored_XSS", "Medium", "C.java", 3));
+
+        assertViolation(evaluate("sast.new > 1", current, previous), 1, 2, 1);
+        assertNull(evaluate("sast.new > 2", current, previous));
+        assertViolation(evaluate("sast.new severity=medium > 0", current, previous), 1, 1, 0);
+        assertNull(evaluate("sast.new path=B.java > 0", current, previous));
+    }
+
+    @Test
+    public void allResultsAreNewWithoutAPreviousBuild() throws IOException {
+        File current = report("build1",
+                result("SQL_Injection", "High", "A.java", 1),
+                result("Stored_XSS", "Medium", "B.java", 2));
+
+        assertViolation(evaluate("sast.new > 1", current, null), 1, 2, 1);
+        assertNull(evaluate("sast.new > 2", current, null));
+    }
+
+    @Test
+    public void buildsWithoutSastReportPass() throws IOException {
+        assertNull(evaluate("sast > 0\nsast.new > 0", tmp.newFolder("empty"), null));
+    }
+
+    // --- helpers ---
+
+    private static void assertCompileError(String policy, String expectedPrefix) {
+        try {
+            CxThresholdPolicy.compile(policy);
+            fail("expected a compile error for: " + policy);
+        } catch (IllegalArgumentException e) {
+            assertTrue("'" + e.getMessage() + "' should start with '" + expectedPrefix + "'",
+                    e.getMessage().startsWith(expectedPrefix));
+        }
+    }
+
+    private static void assertViolation(CxThresholdPolicy.Violation v, int line, long count, long limit) {
+        assertNotNull("expected a violation", v);
+        assertEquals(line, v.getLine());
+        assertEquals(count, v.getCount());
+        assertEquals(limit, v.getLimit());
+    }
+
+    private static CxThresholdPolicy.Violation evaluate(String policy, File build, File previous) throws IOException {
+        return CxThresholdPolicy.compile(policy).evaluate(build, previous, CxBaseline.Lookup.NONE, NOW);
+    }
+
+    private static String result(String query, String severity, String fileName, int similarityId) {
+        return "<!--" + query + "--><Result FileName=\"" + fileName + "\" Line=\"" + similarityId + "\" Column=\"1\" Severity=\""
+                + severity + "\" Status=\"New\" FalsePositive=\"False\">"
+                + "<Path SimilarityId=\"" + similarityId + "\" PathId=\"" + similarityId + "\"/></Result>";
+    }
+
+    /**
+     * Writes a ScanReport.xml with one Query element per query name used by the results, in order.
+     */
+    private File report(String name, String... results) throws IOException {
+        File dir = tmp.newFolder(name);
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<CxXMLResults DeepLink=\"http://cx/scan\">\n");
+        String openQuery = null;
+        for (String r : results) {
+            String query = r.startsWith("<!--") ? r.substring(4, r.indexOf("-->")) : openQuery;
+            if (query != null && !query.equals(openQuery)) {
+                if (openQuery != null) {
+                    xml.append("</Query>\n");
+                }
+                xml.append("<Query name=\"").append(query).append("\" group=\"Java\" cweId=\"").append(cwe(query))
+                        .append("\" Severity=\"High\">\n");
+                openQuery = query;
+            }
+            xml.append(r).append('\n');
+        }
+        if (openQuery != null) {
+            xml.append("</Query>\n");
+        }
+        xml.append("</CxXMLResults>\n");
+        FileUtils.writeStringToFile(new File(dir, CxScanBuilder.SCAN_REPORT_XML), xml.toString(), "UTF-8");
+        return dir;
+    }
+
+    private static int cwe(String query) {
+        if ("SQL_Injection".equals(query)) {
+            return 89;
+        }
+        return "Stored_XSS".equals(query) ? 79 : 117;
+    }
+}